@@ -30,6 +30,7 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import com.googlecode.android.widgets.DateSlider.SliderContainer.OnTimeChangeListener;
+import com.googlecode.android.widgets.DateSlider.labeler.LabelWarmer;
 
 /**
  * A Dialog subclass that hosts a SliderContainer and a couple of buttons,
@@ -46,6 +47,11 @@ public class DateSlider extends Dialog {
     protected TextView mTitleText;
     protected SliderContainer mContainer;
     protected int minuteInterval;
+    /**
+     * How far around the initial time to label ahead of time, or 0 for none
+     */
+    protected long mWarmUpBefore, mWarmUpAfter;
+    protected LabelWarmer mWarmer;
 
 
     public DateSlider(Context context, int layoutID, OnDateSetListener l, Calendar initialTime) {
@@ -103,6 +109,9 @@ public class DateSlider extends Dialog {
         mContainer.setTime(mInitialTime);
         if (minTime!=null) mContainer.setMinTime(minTime);
         if (maxTime!=null) mContainer.setMaxTime(maxTime);
+        if (mWarmUpBefore > 0 || mWarmUpAfter > 0) {
+            mWarmer = mContainer.warmUp(mWarmUpBefore, mWarmUpAfter);
+        }
 
         Button okButton = (Button) findViewById(R.id.dateSliderOkButton);
         okButton.setOnClickListener(okButtonClickListener);
@@ -115,6 +124,30 @@ public class DateSlider extends Dialog {
         mContainer.setTime(c);
     }
 
+    /**
+     * Sets the range around the initial time that the user will probably
+     * browse, whose units are labeled and flagged in the background when the
+     * dialog is created, e.g. 90 days ahead. Must be called before the dialog
+     * is shown.
+     * See {@link SliderContainer#warmUp(long, long)}.
+     *
+     * @param before how far before the initial time, in milliseconds
+     * @param after how far after the initial time, in milliseconds
+     */
+    public void setWarmUpRange(long before, long after) {
+        mWarmUpBefore = before;
+        mWarmUpAfter = after;
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (mWarmer != null) {
+            mWarmer.cancel();
+            mWarmer = null;
+        }
+    }
+
     private android.view.View.OnClickListener okButtonClickListener = new android.view.View.OnClickListener() {
         public void onClick(View v) {
             if (onDateSetListener!=null)
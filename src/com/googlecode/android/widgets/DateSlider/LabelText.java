@@ -0,0 +1,106 @@
+package com.googlecode.android.widgets.DateSlider;
+
+/**
+ * A label that knows how it divides into parts: a primary part, a secondary
+ * part and an optional tertiary part, separated by single characters. Views
+ * with several lines, such as TimeLayoutView, show the parts on separate
+ * lines by their char ranges, without splitting the text.
+ *
+ * The labelers work the parts out from the format string (its literal spaces
+ * separate them) rather than from the formatted text, so a space inside a
+ * month or day name doesn't start a new part. For labels that are plain
+ * CharSequences, {@link #primaryEnd(CharSequence)} and
+ * {@link #secondaryEnd(CharSequence)} fall back to splitting at the first
+ * two spaces.
+ */
+public final class LabelText implements CharSequence {
+    private final String mText;
+    private final int mPrimaryEnd, mSecondaryEnd;
+
+    /**
+     * @param text The whole label
+     * @param primaryEnd The end of the primary part
+     * @param secondaryEnd The end of the secondary part. The secondary part
+     *        starts after the separator at primaryEnd, and the tertiary part
+     *        after the one at secondaryEnd, if there is one.
+     */
+    public LabelText(String text, int primaryEnd, int secondaryEnd) {
+        if (primaryEnd < 0 || secondaryEnd < primaryEnd || secondaryEnd > text.length()) {
+            throw new IllegalArgumentException("Invalid parts " + primaryEnd + ", " + secondaryEnd
+                    + " of \"" + text + "\"");
+        }
+        mText = text;
+        mPrimaryEnd = primaryEnd;
+        mSecondaryEnd = secondaryEnd;
+    }
+
+    public int getPrimaryEnd() {
+        return mPrimaryEnd;
+    }
+
+    public int getSecondaryEnd() {
+        return mSecondaryEnd;
+    }
+
+    /**
+     * @return The end of the primary part of any label
+     */
+    public static int primaryEnd(CharSequence text) {
+        if (text instanceof LabelText) {
+            return ((LabelText)text).mPrimaryEnd;
+        }
+        return nextSpace(text, 0);
+    }
+
+    /**
+     * @return The end of the secondary part of any label
+     */
+    public static int secondaryEnd(CharSequence text) {
+        if (text instanceof LabelText) {
+            return ((LabelText)text).mSecondaryEnd;
+        }
+        final int primaryEnd = nextSpace(text, 0);
+        return primaryEnd == text.length() ? primaryEnd : nextSpace(text, primaryEnd + 1);
+    }
+
+    private static int nextSpace(CharSequence text, int from) {
+        final int length = text.length();
+        int i = from;
+        while (i < length && text.charAt(i) != ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    public char charAt(int index) {
+        return mText.charAt(index);
+    }
+
+    public int length() {
+        return mText.length();
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return mText.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return mText;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LabelText)) {
+            return false;
+        }
+        LabelText other = (LabelText)o;
+        return mText.equals(other.mText) && mPrimaryEnd == other.mPrimaryEnd
+                && mSecondaryEnd == other.mSecondaryEnd;
+    }
+
+    @Override
+    public int hashCode() {
+        return mText.hashCode() * 31 + mPrimaryEnd * 7 + mSecondaryEnd;
+    }
+}
@@ -0,0 +1,100 @@
+package com.googlecode.android.widgets.DateSlider;
+
+import com.googlecode.android.widgets.DateSlider.labeler.LabelFormat;
+
+/**
+ * A reusable counterpart of {@link TimeObject}. Labelers fill these in place
+ * (see {@link com.googlecode.android.widgets.DateSlider.labeler.Labeler#add(long, int, MutableTimeObject)}),
+ * so the ScrollLayout can keep a fixed pool of them and relabel its views
+ * while scrolling without producing garbage.
+ *
+ * The label is either a finished text, or a LabelFormat that the TimeView
+ * renders from the start time itself. The parts of a finished text are given
+ * by {@link #primaryEnd} and {@link #secondaryEnd}, as in TimeObject; those
+ * of a formatted label are reported when it is rendered (see
+ * {@link LabelFormat#render(long, char[], int[])}).
+ */
+public class MutableTimeObject {
+    /**
+     * The label, or null if it is given by {@link #format}
+     */
+    public CharSequence text;
+    /**
+     * The format that labels the start time, or null if the label is {@link #text}
+     */
+    public LabelFormat format;
+    public long startTime, endTime;
+    /**
+     * The ends of the primary and secondary parts of {@link #text}
+     */
+    public int primaryEnd, secondaryEnd;
+    /**
+     * The flags of the unit, as in {@link TimeObject#flags}. The set methods
+     * other than {@link #set(TimeObject)} clear them; labelers fill them in
+     * afterwards.
+     */
+    public int flags;
+
+    public MutableTimeObject set(TimeObject to) {
+        set(to.text, to.primaryEnd, to.secondaryEnd, to.startTime, to.endTime);
+        flags = to.flags;
+        return this;
+    }
+
+    /**
+     * Copies another MutableTimeObject, flags included
+     */
+    public MutableTimeObject set(MutableTimeObject other) {
+        if (other.format != null) {
+            set(other.format, other.startTime, other.endTime);
+        } else {
+            set(other.text, other.primaryEnd, other.secondaryEnd, other.startTime, other.endTime);
+        }
+        flags = other.flags;
+        return this;
+    }
+
+    public MutableTimeObject set(CharSequence text, long startTime, long endTime) {
+        return set(text, LabelText.primaryEnd(text), LabelText.secondaryEnd(text), startTime, endTime);
+    }
+
+    public MutableTimeObject set(CharSequence text, int primaryEnd, int secondaryEnd,
+            long startTime, long endTime) {
+        this.text = text;
+        this.primaryEnd = primaryEnd;
+        this.secondaryEnd = secondaryEnd;
+        this.format = null;
+        this.flags = 0;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        return this;
+    }
+
+    public MutableTimeObject set(LabelFormat format, long startTime, long endTime) {
+        this.text = null;
+        this.format = format;
+        this.flags = 0;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        return this;
+    }
+
+    /**
+     * @return The label, formatting it if necessary
+     */
+    public CharSequence getText() {
+        return text != null ? text : format.format(startTime);
+    }
+
+    /**
+     * @return An immutable copy of this object
+     */
+    public TimeObject toTimeObject() {
+        if (text != null) {
+            return new TimeObject(text, primaryEnd, secondaryEnd, startTime, endTime, flags);
+        }
+        final CharSequence label = format.format(startTime);
+        return new TimeObject(label, LabelText.primaryEnd(label), LabelText.secondaryEnd(label),
+                startTime, endTime, flags);
+    }
+}
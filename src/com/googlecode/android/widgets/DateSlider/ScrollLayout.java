@@ -18,7 +18,7 @@
 
 package com.googlecode.android.widgets.DateSlider;
 
-import java.lang.reflect.Constructor;
+import java.util.TimeZone;
 
 import android.content.Context;
 import android.content.res.TypedArray;
@@ -36,7 +36,22 @@ import android.view.WindowManager;
 import android.widget.LinearLayout;
 import android.widget.Scroller;
 
+import com.googlecode.android.widgets.DateSlider.labeler.Availability;
+import com.googlecode.android.widgets.DateSlider.labeler.Chronology;
+import com.googlecode.android.widgets.DateSlider.labeler.ChronologyLabeler;
+import com.googlecode.android.widgets.DateSlider.labeler.DiskLabelStore;
+import com.googlecode.android.widgets.DateSlider.labeler.EnrichmentLoader;
+import com.googlecode.android.widgets.DateSlider.labeler.EventIndex;
+import com.googlecode.android.widgets.DateSlider.labeler.LabelPrefetcher;
+import com.googlecode.android.widgets.DateSlider.labeler.LabelStore;
 import com.googlecode.android.widgets.DateSlider.labeler.Labeler;
+import com.googlecode.android.widgets.DateSlider.labeler.LabelerRegistry;
+import com.googlecode.android.widgets.DateSlider.labeler.StepLabeler;
+import com.googlecode.android.widgets.DateSlider.labeler.UnitSet;
+import com.googlecode.android.widgets.DateSlider.timeview.DensityView;
+import com.googlecode.android.widgets.DateSlider.timeview.EnrichableTimeView;
+import com.googlecode.android.widgets.DateSlider.timeview.FlaggedTimeView;
+import com.googlecode.android.widgets.DateSlider.timeview.TimeLayoutView;
 import com.googlecode.android.widgets.DateSlider.timeview.TimeView;
 
 /**
@@ -46,13 +61,25 @@ import com.googlecode.android.widgets.DateSlider.timeview.TimeView;
  * to populate the TimeViews with the correct data.
  *
  * This class is configured via xml attributes that specify the class of the
- * labeler to use to generate views, the format string for the labeler to use
+ * labeler to use to generate views (resolved through the
+ * {@link LabelerRegistry}, which knows the built-in labelers without reflection), the format string for the labeler to use
  * to populate the views, and optionally width and height values to override
- * the default width and height of the views.
+ * the default width and height of the views. A StepLabeler also takes the
+ * length and alignment of its units, in seconds, from the labelerStep and
+ * labelerStepOrigin attributes, and a ChronologyLabeler its calendar system
+ * ("gregorian", "hijri" or "persian") from the labelerChronology attribute.
+ * Any labeler can add a label of each unit in a second time zone, given by
+ * the labelerSecondaryZone attribute, formatted with labelerSecondaryFormat
+ * (by default labelerFormat).
  */
 public class ScrollLayout extends LinearLayout {
 
     private static String TAG = "SCROLLLAYOUT";
+    /**
+     * How often the disabled units and the Availability rule may move a time
+     * on in turn when looking for an enabled unit
+     */
+    private static final int MAX_SKIPS = 16;
 
     private Scroller mScroller;
     /**
@@ -95,6 +122,54 @@ public class ScrollLayout extends LinearLayout {
     private Labeler mLabeler;
     private OnScrollListener listener;
     private TimeView mCenterView;
+    /**
+     * One MutableTimeObject per child, which the labeler fills to relabel
+     * that child, so that scrolling doesn't allocate TimeObjects
+     */
+    private MutableTimeObject[] mElemPool;
+    /**
+     * Labels the units that a fling will bring into view on a background thread
+     */
+    private LabelPrefetcher mPrefetcher;
+    /**
+     * Whether a prefetch is in progress, the start time of the center unit
+     * when it started, and the offset of the current center unit from that one
+     */
+    private boolean mPrefetching;
+    private long mPrefetchAnchor;
+    private int mPrefetchOffset;
+    /**
+     * Whether the center unit must be checked against the disabled units,
+     * or moved to the nearest event, when the current fling ends
+     */
+    private boolean mSnapPending;
+    /**
+     * The events whose density the TimeViews show, or null
+     */
+    private EventIndex mEvents;
+    private int[] mDensities;
+    /**
+     * Whether scrolling stops at the events of mEvents only
+     */
+    private boolean mSnapToEvents;
+    /**
+     * The units of the window, as requested from the labeler's EnrichmentLoader
+     */
+    private long[] mWindowStarts, mWindowEnds;
+    /**
+     * Passes loaded enrichments on to the TimeViews that still show their units
+     */
+    private final EnrichmentLoader.Listener mEnrichmentListener = new EnrichmentLoader.Listener() {
+        public void onEnriched(long startTime, CharSequence enrichment) {
+            final int childCount = getChildCount();
+            for (int i = 0; i < childCount; i++) {
+                TimeView tv = (TimeView)getChildAt(i);
+                if (tv.getStartTime() == startTime && tv instanceof EnrichableTimeView) {
+                    ((EnrichableTimeView)tv).setEnrichment(enrichment);
+                }
+            }
+        }
+    };
 
     public ScrollLayout(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -113,7 +188,7 @@ public class ScrollLayout extends LinearLayout {
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ScrollLayout,
                 0, 0);
 
-        // Get the labeler class and construct an instance
+        // Get the labeler class and construct an instance through its factory
         String className = a.getNonResourceString(R.styleable.ScrollLayout_labelerClass);
         if (className == null) {
             throw new RuntimeException("Must specify labeler class at " + a.getPositionDescription());
@@ -125,13 +200,37 @@ public class ScrollLayout extends LinearLayout {
         }
 
         try {
-            Class<?> klazz = Class.forName(className);
-            Constructor<?> ctor = klazz.getConstructor(String.class);
-            mLabeler = (Labeler)ctor.newInstance(labelerFormat);
-        } catch (Exception e) {
+            mLabeler = LabelerRegistry.create(className, labelerFormat);
+        } catch (RuntimeException e) {
             throw new RuntimeException("Failed to construct labeler at " + a.getPositionDescription(), e);
         }
 
+        if (mLabeler instanceof StepLabeler) {
+            StepLabeler stepLabeler = (StepLabeler)mLabeler;
+            long step = a.getInt(R.styleable.ScrollLayout_labelerStep,
+                    (int)(stepLabeler.getStep() / 1000)) * 1000L;
+            long origin = a.getInt(R.styleable.ScrollLayout_labelerStepOrigin,
+                    (int)(stepLabeler.getOrigin() / 1000)) * 1000L;
+            if (step <= 0) {
+                throw new RuntimeException("labelerStep must be positive at " + a.getPositionDescription());
+            }
+            stepLabeler.setStep(step, origin);
+        }
+        String secondaryZone = a.getString(R.styleable.ScrollLayout_labelerSecondaryZone);
+        if (secondaryZone != null) {
+            String secondaryFormat = a.getString(R.styleable.ScrollLayout_labelerSecondaryFormat);
+            mLabeler.setSecondaryLabel(secondaryFormat != null ? secondaryFormat : labelerFormat,
+                    TimeZone.getTimeZone(secondaryZone));
+        }
+        String chronology = a.getString(R.styleable.ScrollLayout_labelerChronology);
+        if (chronology != null && mLabeler instanceof ChronologyLabeler) {
+            try {
+                ((ChronologyLabeler)mLabeler).setChronology(Chronology.forName(chronology));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Invalid labelerChronology at " + a.getPositionDescription(), e);
+            }
+        }
+
         // Determine the width and height of our children, using the labelers preferred
         // values as defaults
         objWidth = a.getDimensionPixelSize(R.styleable.ScrollLayout_childWidth,
@@ -171,33 +270,28 @@ public class ScrollLayout extends LinearLayout {
         // Make sure we weren't inflated with any views for some odd reason
         removeAllViews();
 
+        mElemPool = new MutableTimeObject[childCount];
+        for (int i = 0; i < childCount; i++) {
+            mElemPool[i] = new MutableTimeObject();
+        }
+        mPrefetcher = new LabelPrefetcher(mLabeler);
+
         // Now add all of the child views, making sure to make the center view as such.
         for (int i = 0; i < childCount; i++) {
             LayoutParams lp = new LayoutParams(objWidth, objHeight);
             TimeView ttv = mLabeler.createView(getContext(), i == centerIndex);
+            if (mLabeler.getSecondaryLabel() != null && ttv instanceof TimeLayoutView) {
+                ((TimeLayoutView)ttv).setSecondaryLabel(mLabeler.getSecondaryLabel());
+            }
             addView((View)ttv, lp);
         }
 
-        // Now we need to set the times on all of the TimeViews. We start with the center
-        // view, work our way to the end, then starting from the center again, work our
-        // way back to the beginning.
+        // Now we need to set the times on all of the TimeViews. The labeler fills the
+        // whole window in one go, with the current time's unit in the center view.
         mCenterView = (TimeView)getChildAt(centerIndex);
-        mCenterView.setVals(mLabeler.getElem(currentTime));
-        
-        
-        Log.v(TAG, "mCenter: " + mCenterView.getTimeText() + " minInterval " + minuteInterval);
+        fillWindow(currentTime);
 
-        // TODO: Do I need to use endTime, or can I just use the point time?
-        for (int i = centerIndex + 1; i < childCount; i++) {
-            TimeView lastView = (TimeView)getChildAt(i - 1);
-            TimeView thisView = (TimeView)getChildAt(i);
-            thisView.setVals(mLabeler.add(lastView.getEndTime(), 1));
-        }
-        for (int i = centerIndex - 1; i >= 0; i--) {
-            TimeView lastView = (TimeView)getChildAt(i + 1);
-            TimeView thisView = (TimeView)getChildAt(i);
-            thisView.setVals(mLabeler.add(lastView.getEndTime(), -1));
-        }
+        Log.v(TAG, "mCenter: " + mCenterView.getTimeText() + " minInterval " + minuteInterval);
 
         // Finally, set our actual children width
         childrenWidth = childCount * objWidth;
@@ -226,18 +320,87 @@ public class ScrollLayout extends LinearLayout {
         leftShadow.draw(canvas);
     }
 
+    /**
+     * Sets the earliest time that can be selected. Units before it are
+     * flagged with {@link TimeObject#OUT_OF_RANGE}, which greys them out.
+     *
+     * @param time The earliest time, or -1 for none
+     */
     public void setMinTime(long time) {
+    	stopPrefetch();
     	minTime = time;
+    	mLabeler.setTimeRange(minTime, maxTime);
+    	refreshFlags();
     }
     
+    /**
+     * Sets the latest time that can be selected, see {@link #setMinTime(long)}.
+     *
+     * @param time The latest time, or -1 for none
+     */
     public void setMaxTime(long time) {
+    	stopPrefetch();
     	maxTime = time;
+    	mLabeler.setTimeRange(minTime, maxTime);
+    	refreshFlags();
+    }
+
+    /**
+     * Flags the visible units again, since the views style themselves from
+     * their flags
+     */
+    private void refreshFlags() {
+        if (mCenterView != null) {
+            fillWindow(mCenterView.getStartTime());
+        }
     }
     
     
     public void setTime(long time) {
     	this.setTime(time, 0);
     }
+
+    /**
+     * Sets the units that can't be selected, by their indexes as numbered by
+     * the labeler (see {@link Labeler#getUnitIndex(long)}). They are greyed
+     * out, and a fling or a drag that ends on one of them moves on to the
+     * nearest unit that isn't disabled.
+     *
+     * @param units The disabled units, or null for none
+     * @throws UnsupportedOperationException if the labeler doesn't number its
+     *         units
+     */
+    public void setDisabledUnits(UnitSet units) {
+        stopPrefetch();
+        mLabeler.setDisabledUnits(units);
+        refreshFlags();
+    }
+
+    public UnitSet getDisabledUnits() {
+        return mLabeler.getDisabledUnits();
+    }
+
+    /**
+     * Sets the rule for the times that can be selected. Units that contain
+     * no available time are greyed out and skipped like disabled units, see
+     * {@link #setDisabledUnits(UnitSet)}, within the range set by
+     * {@link #setMinTime(long)} and {@link #setMaxTime(long)}.
+     *
+     * @param availability The rule, or null if every time is available
+     */
+    public void setAvailability(Availability availability) {
+        stopPrefetch();
+        mLabeler.setAvailability(availability);
+        refreshFlags();
+    }
+
+    public Availability getAvailability() {
+        return mLabeler.getAvailability();
+    }
+
+    public Labeler getLabeler() {
+        return mLabeler;
+    }
     
     
     /**
@@ -249,19 +412,10 @@ public class ScrollLayout extends LinearLayout {
      */
     public void setMinuteInterval(int minInterval) {
     	this.minuteInterval = minInterval;
+    	stopPrefetch();
     	mLabeler.setMinuteInterval(minInterval);
     	if (minInterval>1) {
-    		final int centerIndex = (getChildCount() / 2);
-            for (int i = centerIndex + 1; i < getChildCount(); i++) {
-                TimeView lastView = (TimeView)getChildAt(i - 1);
-                TimeView thisView = (TimeView)getChildAt(i);
-                thisView.setVals(mLabeler.add(lastView.getEndTime(), 1));
-            }
-            for (int i = centerIndex - 1; i >= 0; i--) {
-                TimeView lastView = (TimeView)getChildAt(i + 1);
-                TimeView thisView = (TimeView)getChildAt(i);
-                thisView.setVals(mLabeler.add(lastView.getEndTime(), -1));
-            }
+    		fillWindow(mCenterView.getStartTime());
     	}
     }
     
@@ -274,20 +428,22 @@ public class ScrollLayout extends LinearLayout {
     private void setTime(long time, int loops) {
         currentTime = time;
         if (!mScroller.isFinished()) mScroller.abortAnimation();
+        stopPrefetch();
         int pos = getChildCount()/2;
         TimeView currelem = (TimeView)getChildAt(pos);
-        if (loops>2 || currelem.getStartTime() <= time && currelem.getEndTime() >= time) {
+        if (mLabeler.hasUnitIndex()) {
+            // we know exactly which unit the time is in, so relabel the window
+            // around it at once if it isn't the current one
+            if (mLabeler.getUnitIndex(time) != mLabeler.getUnitIndex(currelem.getStartTime())) {
+                fillWindow(time);
+            }
+            scrollWithinCenter(currelem, time);
+        } else if (loops>2 || currelem.getStartTime() <= time && currelem.getEndTime() >= time) {
             if (loops>2) {
                 Log.d(TAG,String.format("time: %d, start: %d, end: %d", time, currelem.getStartTime(), currelem.getEndTime()));
                 return;
             }
-            double center = getWidth()/2.0;
-            int left = (getChildCount()/2)*objWidth-getScrollX();
-            double currper = (center-left)/objWidth;
-            double goalper = (time-currelem.getStartTime())/(double)(currelem.getEndTime()-currelem.getStartTime());
-            int shift = (int)Math.round((currper-goalper)*objWidth);
-            mScrollX-=shift;
-            reScrollTo(mScrollX,0,false);
+            scrollWithinCenter(currelem, time);
         } else {
             double diff = currelem.getEndTime() - currelem.getStartTime();
             int steps = (int)Math.round(((time-(currelem.getStartTime()+diff/2))/diff));
@@ -296,6 +452,190 @@ public class ScrollLayout extends LinearLayout {
         }
     }
 
+    /**
+     * scrolls so that the given time, which lies within the center element, is in
+     * the middle of the layout
+     */
+    private void scrollWithinCenter(TimeView currelem, long time) {
+        double center = getWidth()/2.0;
+        int left = (getChildCount()/2)*objWidth-getScrollX();
+        double currper = (center-left)/objWidth;
+        double goalper = (time-currelem.getStartTime())/(double)(currelem.getEndTime()-currelem.getStartTime());
+        int shift = (int)Math.round((currper-goalper)*objWidth);
+        mScrollX-=shift;
+        reScrollTo(mScrollX,0,false);
+    }
+
+    /**
+     * relabels all of the TimeViews in one batch, with the unit containing the
+     * given time in the center view
+     */
+    private void fillWindow(long time) {
+        final int childCount = getChildCount();
+        mLabeler.fill(time, -(childCount / 2), mElemPool, 0, childCount);
+        mLabeler.setFlags(mElemPool, 0, childCount);
+        showWindow();
+    }
+
+    /**
+     * sets all of the TimeViews from the pool
+     */
+    private void showWindow() {
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            setVals((TimeView)getChildAt(i), mElemPool[i]);
+        }
+        requestEnrichments();
+        updateDensities();
+    }
+
+    /**
+     * relabels a TimeView from a pool object, in place if the TimeView is a
+     * {@link FlaggedTimeView}
+     */
+    private static void setVals(TimeView tv, MutableTimeObject to) {
+        if (tv instanceof FlaggedTimeView) {
+            ((FlaggedTimeView)tv).setVals(to);
+        } else {
+            tv.setVals(to.toTimeObject());
+        }
+    }
+
+    /**
+     * @return The flags of the unit the TimeView displays, asking the labeler
+     *         if the TimeView doesn't keep them
+     */
+    private int getFlags(TimeView tv) {
+        if (tv instanceof FlaggedTimeView) {
+            return ((FlaggedTimeView)tv).getFlags();
+        }
+        return mLabeler.getFlags(tv.getStartTime(), tv.getEndTime());
+    }
+
+    /**
+     * Shows the enrichments of the visible units that have been loaded, and
+     * placeholders for the others, and asks the labeler's EnrichmentLoader to
+     * load the missing ones for the whole window in one batch
+     */
+    private void requestEnrichments() {
+        final EnrichmentLoader loader = mLabeler.getEnrichmentLoader();
+        if (loader == null) {
+            return;
+        }
+        final int childCount = getChildCount();
+        if (mWindowStarts == null || mWindowStarts.length < childCount) {
+            mWindowStarts = new long[childCount];
+            mWindowEnds = new long[childCount];
+        }
+        final CharSequence placeholder = loader.getPlaceholder();
+        for (int i = 0; i < childCount; i++) {
+            TimeView tv = (TimeView)getChildAt(i);
+            mWindowStarts[i] = tv.getStartTime();
+            mWindowEnds[i] = tv.getEndTime();
+            final CharSequence enrichment = loader.get(mWindowStarts[i], placeholder);
+            if (tv instanceof EnrichableTimeView) {
+                ((EnrichableTimeView)tv).setEnrichment(enrichment);
+            }
+        }
+        loader.request(mWindowStarts, mWindowEnds, childCount, mEnrichmentListener);
+    }
+
+    /**
+     * Shows in each TimeView how many of the events of the index its unit
+     * contains, relative to the busiest unit in view, if the TimeView is a
+     * {@link DensityView}. Counting the events of
+     * a unit takes two binary searches, so it is done for the whole window
+     * whenever the views are relabeled.
+     *
+     * @param events The events, or null to hide the density bars
+     */
+    public void setEventIndex(EventIndex events) {
+        mEvents = events;
+        refreshDensity();
+    }
+
+    public EventIndex getEventIndex() {
+        return mEvents;
+    }
+
+    /**
+     * Makes the slider a scrubber that only stops at events: when a drag or
+     * a fling ends, it moves on to the event of the index set by
+     * {@link #setEventIndex(EventIndex)} nearest to the selected time, which
+     * the fling aims at from the start if the labeler numbers its units.
+     * Only events between the minimum and maximum times are snapped to; if
+     * the nearest of them lies in a disabled unit, or there is none, the
+     * slider snaps to the nearest enabled unit as usual.
+     *
+     * @param snap true to snap to events
+     */
+    public void setSnapToEvents(boolean snap) {
+        mSnapToEvents = snap;
+    }
+
+    public boolean isSnapToEvents() {
+        return mSnapToEvents;
+    }
+
+    /**
+     * Recounts the events of the units in view, after events have been
+     * appended to the index.
+     */
+    public void refreshDensity() {
+        if (mEvents == null) {
+            final int childCount = getChildCount();
+            for (int i = 0; i < childCount; i++) {
+                final View child = getChildAt(i);
+                if (child instanceof DensityView) {
+                    ((DensityView)child).setDensity(0, 0);
+                }
+            }
+        } else {
+            updateDensities();
+        }
+    }
+
+    /**
+     * Counts the events of the units in view and shows them as bars scaled
+     * to the busiest of them
+     */
+    private void updateDensities() {
+        final EventIndex events = mEvents;
+        if (events == null) {
+            return;
+        }
+        final int childCount = getChildCount();
+        if (mDensities == null || mDensities.length < childCount) {
+            mDensities = new int[childCount];
+        }
+        int max = 0;
+        for (int i = 0; i < childCount; i++) {
+            TimeView tv = (TimeView)getChildAt(i);
+            mDensities[i] = events.count(tv.getStartTime(), tv.getEndTime());
+            max = Math.max(max, mDensities[i]);
+        }
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            if (child instanceof DensityView) {
+                ((DensityView)child).setDensity(mDensities[i], max == 0 ? 0 : mDensities[i] / (float)max);
+            }
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        final EnrichmentLoader loader = mLabeler.getEnrichmentLoader();
+        if (loader != null) {
+            loader.cancelAll();
+        }
+        // keep the labels formatted for this picker for the next run
+        final DiskLabelStore disk = LabelStore.getDiskStore();
+        if (disk != null) {
+            disk.saveInBackground();
+        }
+    }
+
 
 
     /**
@@ -308,6 +648,14 @@ public class ScrollLayout extends LinearLayout {
             reScrollTo(mScrollX,0, true);
             // Keep on drawing until the animation has finished.
             postInvalidate();
+        } else {
+            if (mPrefetching) {
+                stopPrefetch();
+            }
+            if (mSnapPending) {
+                mSnapPending = false;
+                snap(0);
+            }
         }
     }
 
@@ -319,6 +667,37 @@ public class ScrollLayout extends LinearLayout {
         reScrollTo(x, y, true);
     }
 
+    /**
+     * Works out, from the unit indexes of the labeler, how far a scroll would
+     * take the centre line past minTime or maxTime. Unlike the estimate from
+     * the duration of the centre unit, this is exact however long the units
+     * in between are.
+     *
+     * @param scrollX The current scroll position
+     * @param scrollDiff The distance to scroll
+     * @return The part of scrollDiff beyond the limit, or 0 if the scroll
+     *         stays within it
+     */
+    private int getLimitDeviation(int scrollX, int scrollDiff) {
+        final long limit = scrollDiff < 0 ? minTime : maxTime;
+        if (limit == -1) {
+            return 0;
+        }
+        // positions are in units from the start of the centre unit
+        final int left = (getChildCount()/2)*objWidth - scrollX;
+        final double position = (getWidth()/2.0 - left)/objWidth;
+        final long index = mLabeler.getUnitIndex(limit);
+        final long start = mLabeler.getUnitTime(index);
+        final long end = mLabeler.getUnitTime(index + 1);
+        final double limitPosition = (index - mLabeler.getUnitIndex(mCenterView.getStartTime()))
+                + (double)(limit - start)/(end - start);
+        final double target = position + (double)scrollDiff/objWidth;
+        if (scrollDiff < 0 ? target >= limitPosition : target <= limitPosition) {
+            return 0;
+        }
+        return scrollDiff - (int)Math.round((limitPosition - position)*objWidth);
+    }
+
     /**
      * core scroll function which will replace and move TimeTextViews so that they don't get
      * scrolled out of the layout
@@ -328,12 +707,21 @@ public class ScrollLayout extends LinearLayout {
      * @param notify if false, the listeners won't be called
      */
     protected void reScrollTo(int x, int y, boolean notify) {
-    	if (notify) Log.d(TAG,String.format("scroll to " + x));
     	int scrollX = getScrollX();
     	int scrollDiff = x - mLastScroll;
     	
+    	if (notify && scrollDiff != 0 && objWidth > 0 && mLabeler.hasUnitIndex()) {
+    	    // the units are numbered, so the limit is found exactly
+    	    final int deviation = getLimitDeviation(scrollX, scrollDiff);
+    	    if (deviation != 0) {
+    	        mScrollX -= deviation;
+    	        x -= deviation;
+    	        scrollDiff -= deviation;
+    	        if (!mScroller.isFinished()) mScroller.abortAnimation();
+    	    }
+    	}
     	// estimate whether we are going to reach the lower limit
-    	if (minTime!=-1 && notify && scrollDiff<0) {
+    	else if (minTime!=-1 && notify && scrollDiff<0) {
             double center = getWidth()/2.0;
             int left = (getChildCount()/2)*objWidth-scrollX;
             double f = (center-left)/objWidth;
@@ -396,8 +784,6 @@ public class ScrollLayout extends LinearLayout {
             int left = (getChildCount()/2)*objWidth-scrollX;
             double f = (center-left)/objWidth;
             currentTime = (long)(mCenterView.getStartTime()+(mCenterView.getEndTime()-mCenterView.getStartTime())*f);
-            if (notify) Log.d(TAG,String.format("real time " + currentTime));
-            if (notify) Log.d(TAG,String.format(""));
             listener.onScroll(currentTime);
         };
         mLastScroll = x;
@@ -415,46 +801,118 @@ public class ScrollLayout extends LinearLayout {
             return;
         }
 
-        // We need to make each TimeView reflect a value that is -steps units
-        // from its current value. As an optimization, we will see if this
-        // value is already present in another child (by looking to see if there
-        // is a child at an index -steps offset from the target child's index).
-        // Since this method is most often called with steps equal to 1 or -1,
-        // this is a valuable optimization. However, when doing this we need to
-        // make sure that we don't overwrite the value of the other child before
-        // we copy the value out. So, when steps is negative, we will be pulling
-        // values from children with larger indexes and we want to iterate forwards.
-        // When steps is positive, we will be pulling values from children with
-        // smaller indexes, and we want to iterate backwards.
+        final int childCount = getChildCount();
+        if (mPrefetching) {
+            mPrefetchOffset -= steps;
+        }
+
+        // If every view falls off the edge, relabel the whole window around the
+        // new center, which is -steps units from the current one.
+        if (Math.abs(steps) >= childCount) {
+            if (takePrefetched(0, childCount)) {
+                showWindow();
+            } else if (mLabeler.hasUnitIndex()) {
+                fillWindow(mLabeler.getUnitTime(mLabeler.getUnitIndex(mCenterView.getStartTime()) - steps));
+            } else {
+                final int centerIndex = childCount / 2;
+                mLabeler.add(mCenterView.getEndTime(), -steps, mElemPool[centerIndex]);
+                fillWindow(mElemPool[centerIndex].startTime);
+            }
+            return;
+        }
+
+        // Otherwise, we need to make each TimeView reflect a value that is -steps units
+        // from its current value. Most of these values are already present in another
+        // child (the one at an index -steps offset from the target child's index), so
+        // we copy them over. However, when doing this we need to make sure that we
+        // don't overwrite the value of the other child before we copy the value out.
+        // So, when steps is negative, we will be pulling values from children with
+        // larger indexes and we want to iterate forwards. When steps is positive, we
+        // will be pulling values from children with smaller indexes, and we want to
+        // iterate backwards. The children at the far end, whose values aren't present,
+        // are then filled by the labeler in one batch, continuing from their neighbour.
 
         int start;
         int end;
         int incr;
         if (steps < 0) {
             start = 0;
-            end = getChildCount();
+            end = childCount + steps;
             incr = 1;
         } else {
-            start = getChildCount() - 1;
-            end = -1;
+            start = childCount - 1;
+            end = steps - 1;
             incr = -1;
         }
         for (int i = start; i != end; i += incr) {
-            TimeView tv = (TimeView)getChildAt(i);
-            int index = i - steps;
-            if (index >= 0 && index < getChildCount()) {
-                tv.setVals((TimeView)getChildAt(index));
+            ((TimeView)getChildAt(i)).setVals((TimeView)getChildAt(i - steps));
+        }
+        final int newFirst = steps < 0 ? childCount + steps : 0;
+        final int newCount = Math.abs(steps);
+        if (!takePrefetched(newFirst, newCount)) {
+            if (steps < 0) {
+                mLabeler.fill(((TimeView)getChildAt(newFirst - 1)).getStartTime(), 1, mElemPool, newFirst, newCount);
             } else {
-                tv.setVals(mLabeler.add(tv.getEndTime(), -steps));
+                mLabeler.fill(((TimeView)getChildAt(steps)).getStartTime(), -steps, mElemPool, newFirst, newCount);
             }
-            if (minTime != -1 && tv.getEndTime() < minTime) {
-            	if (!tv.isOutOfBounds()) tv.setOutOfBounds(true);
-            } else if (maxTime != -1 && tv.getStartTime() > maxTime) {
-            	if (!tv.isOutOfBounds()) tv.setOutOfBounds(true);
-            } else if (tv.isOutOfBounds()) {
-            	tv.setOutOfBounds(false);
+            mLabeler.setFlags(mElemPool, newFirst, newCount);
+        }
+        for (int i = newFirst; i < newFirst + newCount; i++) {
+            setVals((TimeView)getChildAt(i), mElemPool[i]);
+        }
+        requestEnrichments();
+        updateDensities();
+    }
+
+    /**
+     * Fills the pool objects of the views that scrolled into view with the
+     * units that the prefetcher labeled for them, if they are all ready
+     *
+     * @return true if they were all ready
+     */
+    private boolean takePrefetched(int first, int count) {
+        if (!mPrefetching) {
+            return false;
+        }
+        final int centerIndex = getChildCount() / 2;
+        for (int i = first; i < first + count; i++) {
+            if (!mPrefetcher.get(mPrefetchAnchor, mPrefetchOffset + i - centerIndex, mElemPool[i])) {
+                return false;
             }
         }
+        return true;
+    }
+
+    /**
+     * Starts labeling the units that a fling will bring into view in the
+     * background
+     *
+     * @param distance The distance the fling will scroll, in pixels
+     */
+    private void startPrefetch(int distance) {
+        if (objWidth <= 0) {
+            return;
+        }
+        // one more unit than the distance covers, since the fling may end
+        // part way into it
+        final int units = Math.abs(distance) / objWidth + 1;
+        final int childCount = getChildCount();
+        final int centerIndex = childCount / 2;
+        mPrefetching = true;
+        mPrefetchAnchor = mCenterView.getStartTime();
+        mPrefetchOffset = 0;
+        if (distance > 0) {
+            mPrefetcher.prefetch(mPrefetchAnchor, childCount - centerIndex, units, true);
+        } else {
+            mPrefetcher.prefetch(mPrefetchAnchor, -centerIndex - units, units, false);
+        }
+    }
+
+    private void stopPrefetch() {
+        if (mPrefetching) {
+            mPrefetching = false;
+            mPrefetcher.cancel();
+        }
     }
 
     /**
@@ -469,6 +927,8 @@ public class ScrollLayout extends LinearLayout {
             if (!mScroller.isFinished()) {
                 mScroller.abortAnimation();
             }
+            stopPrefetch();
+            mSnapPending = false;
         }
 
         if (!mDragMode)
@@ -493,6 +953,8 @@ public class ScrollLayout extends LinearLayout {
 
             if (getChildCount() > 0 && Math.abs(initialVelocity) > mMinimumVelocity) {
                 fling(-initialVelocity);
+            } else {
+                snap(0);
             }
         case MotionEvent.ACTION_CANCEL:
         default:
@@ -512,10 +974,289 @@ public class ScrollLayout extends LinearLayout {
     private void fling(int velocityX) {
         if (getChildCount() > 0) {
             mScroller.fling(mScrollX, 0, velocityX, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, 0, 0);
+            if (isSnappingToEvents() && aimAtEvent(mScroller.getFinalX() - mScrollX, velocityX > 0 ? 1 : -1)) {
+                mSnapPending = true;
+            } else if (hasDisabledUnits() || isSnappingToEvents()) {
+                aimAtEnabled(mScroller.getFinalX() - mScrollX, velocityX > 0 ? 1 : -1);
+                mSnapPending = true;
+            }
+            // the Scroller knows where the fling will stop, so label the
+            // units it will bring into view ahead of time
+            startPrefetch(mScroller.getFinalX() - mScrollX);
             invalidate();
         }
     }
 
+    /**
+     * @return true if some units may be disabled, by a set of units or by an
+     *         Availability rule
+     */
+    private boolean hasDisabledUnits() {
+        return mLabeler.getDisabledUnits() != null || mLabeler.getAvailability() != null;
+    }
+
+    /**
+     * If the fling that was just started would end on a disabled unit, lets
+     * the Scroller scroll to the middle of the nearest enabled unit instead,
+     * over the same time. This needs the labeler to number its units; for
+     * other labelers, the fling ends where it would and then snaps.
+     *
+     * @param distance The distance the fling will scroll, in pixels
+     * @param direction The direction of the fling
+     */
+    private void aimAtEnabled(int distance, int direction) {
+        if (objWidth <= 0 || !mLabeler.hasUnitIndex()) {
+            return;
+        }
+        final int steps = stepsAfter(distance);
+        final long index = mLabeler.getUnitIndex(mCenterView.getStartTime());
+        final long start = mLabeler.getUnitTime(index + steps);
+        final long end = mLabeler.getUnitTime(index + steps + 1) - 1;
+        if ((mLabeler.getFlags(start, end) & TimeObject.DISABLED) == 0) {
+            return;
+        }
+        final long time = nearestEnabledTime(start, end, start + (end - start) / 2, direction);
+        if (time == -1) {
+            return;
+        }
+        final int duration = mScroller.getDuration();
+        final int aimed = getAimedDistance(mLabeler.getUnitIndex(time) - index, 0);
+        mScroller.abortAnimation();
+        mScroller.startScroll(mScrollX, 0, aimed, 0, duration);
+    }
+
+    /**
+     * @param distance The distance of a scroll, in pixels
+     * @return The number of units that the scroll will move the center by
+     */
+    private int stepsAfter(int distance) {
+        // where the center of the layout will be relative to the middle of
+        // the center view, and so how many units it will pass
+        final int relative = getScrollX() - mInitialOffset + distance;
+        int steps = (relative + objWidth / 2) / objWidth;
+        if (relative + objWidth / 2 < 0 && (relative + objWidth / 2) % objWidth != 0) {
+            steps--;
+        }
+        return steps;
+    }
+
+    /**
+     * Lets the Scroller that was just started on a fling scroll to the event
+     * nearest to where the fling would end instead, over the same time. Like
+     * {@link #aimAtEnabled(int, int)}, this needs the labeler to number its
+     * units.
+     *
+     * @param distance The distance the fling will scroll, in pixels
+     * @param direction The direction of the fling
+     * @return true if the Scroller was aimed at an event, false if there is
+     *         no event to aim at (see {@link #nearestEvent(long, int)}) or the
+     *         labeler doesn't number its units, so the fling is handled as usual
+     */
+    private boolean aimAtEvent(int distance, int direction) {
+        if (objWidth <= 0 || !mLabeler.hasUnitIndex()) {
+            return false;
+        }
+        final int steps = stepsAfter(distance);
+        final long index = mLabeler.getUnitIndex(mCenterView.getStartTime());
+        final long start = mLabeler.getUnitTime(index + steps);
+        final long end = mLabeler.getUnitTime(index + steps + 1) - 1;
+        final long event = nearestEvent(start + (end - start) / 2, direction);
+        if (event == -1) {
+            return false;
+        }
+        final long eventIndex = mLabeler.getUnitIndex(event);
+        final long eventStart = mLabeler.getUnitTime(eventIndex);
+        final long eventEnd = mLabeler.getUnitTime(eventIndex + 1) - 1;
+        // the center of the layout is at the middle of the center view when
+        // scrolled by mInitialOffset
+        final double f = (event - eventStart) / (double)(eventEnd - eventStart) - 0.5;
+        final int aimed = getAimedDistance(eventIndex - index, f);
+        final int duration = mScroller.getDuration();
+        mScroller.abortAnimation();
+        mScroller.startScroll(mScrollX, 0, aimed, 0, duration);
+        return true;
+    }
+
+    /**
+     * @param units The number of units from the center unit to the target
+     * @param fraction Where the center of the layout should be in the
+     *        target unit, relative to its middle, from -0.5 to 0.5
+     * @return The distance to scroll, clamped so that the scroll position
+     *         doesn't overflow
+     */
+    private int getAimedDistance(long units, double fraction) {
+        final long limit = (Integer.MAX_VALUE / 2) / objWidth;
+        final long clamped = Math.max(-limit, Math.min(limit, units));
+        return (int)(clamped * objWidth) + (int)Math.round(fraction * objWidth)
+                - (getScrollX() - mInitialOffset);
+    }
+
+    /**
+     * @param time A time
+     * @param direction The direction to prefer if the events on either side
+     *        are equally far
+     * @return The time of the event nearest to the given time between
+     *         minTime and maxTime, or -1 if there is none or its unit is
+     *         disabled, in which case the slider snaps to enabled units
+     */
+    private long nearestEvent(long time, int direction) {
+        final long event = mEvents.nearest(time, direction,
+                minTime == -1 ? Long.MIN_VALUE : minTime, maxTime == -1 ? Long.MAX_VALUE : maxTime);
+        if (event == -1 || (hasDisabledUnits() && (mLabeler.getElem(event).flags & TimeObject.DISABLED) != 0)) {
+            return -1;
+        }
+        return event;
+    }
+
+    /**
+     * Ends a drag or a fling: at the nearest event when snapping to events,
+     * otherwise at the nearest enabled unit
+     *
+     * @param direction The direction to prefer if the targets on either side
+     *        are equally far
+     */
+    private void snap(int direction) {
+        if (isSnappingToEvents()) {
+            if (mCenterView == null) {
+                return;
+            }
+            final long event = nearestEvent(currentTime, direction);
+            if (event == -1) {
+                snapToEnabled(direction);
+            } else if (event != currentTime) {
+                setTime(event);
+                if (listener != null) {
+                    listener.onScroll(event);
+                }
+            }
+        } else {
+            snapToEnabled(direction);
+        }
+    }
+
+    private boolean isSnappingToEvents() {
+        return mSnapToEvents && mEvents != null && mEvents.size() > 0;
+    }
+
+    /**
+     * Moves to the nearest enabled unit if the center unit is disabled, as if
+     * the user had scrolled there
+     *
+     * @param direction The direction to prefer if the enabled units on
+     *        either side are equally far
+     */
+    private void snapToEnabled(int direction) {
+        if (mCenterView == null || (getFlags(mCenterView) & TimeObject.DISABLED) == 0) {
+            return;
+        }
+        long time = nearestEnabledTime(mCenterView.getStartTime(), mCenterView.getEndTime(), currentTime, direction);
+        if (time == -1) {
+            return;
+        }
+        // show the whole unit, unless the rule only allows part of it
+        final TimeObject unit = mLabeler.getElem(time);
+        final long middle = unit.startTime + (unit.endTime - unit.startTime) / 2;
+        final Availability availability = mLabeler.getAvailability();
+        if (availability == null || availability.isAvailable(middle, middle)) {
+            time = middle;
+        }
+        setTime(time);
+        if (listener != null) {
+            listener.onScroll(time);
+        }
+    }
+
+    /**
+     * @param start The start time of a disabled unit
+     * @param end The end time of the unit
+     * @param time The time within the unit to measure distances from
+     * @param direction The direction to prefer if the enabled units on
+     *        either side are equally far
+     * @return A time in the nearest enabled unit within range, or -1 if
+     *         there is none
+     */
+    private long nearestEnabledTime(long start, long end, long time, int direction) {
+        long next = nextEnabledTime(end + 1);
+        long previous = previousEnabledTime(start - 1);
+        if (maxTime != -1 && next > maxTime) {
+            next = -1;
+        }
+        if (minTime != -1 && previous < minTime) {
+            previous = -1;
+        }
+        if (next == -1 || previous == -1) {
+            return next == -1 ? previous : next;
+        }
+        final long after = next - time;
+        final long before = time - previous;
+        if (after == before) {
+            return direction > 0 ? next : previous;
+        }
+        return after < before ? next : previous;
+    }
+
+    /**
+     * @return The first time at or after the given one that lies in an
+     *         enabled unit, or -1 if none is found
+     */
+    private long nextEnabledTime(long time) {
+        final UnitSet disabled = mLabeler.getDisabledUnits();
+        final Availability availability = mLabeler.getAvailability();
+        // each of them may move the time onto a unit that the other one
+        // disables, so apply them in turn until neither does
+        for (int i = 0; i < MAX_SKIPS; i++) {
+            long t = time;
+            if (disabled != null) {
+                final long index = mLabeler.getUnitIndex(t);
+                final long clear = disabled.nextClear(index);
+                if (clear != index) {
+                    t = mLabeler.getUnitTime(clear);
+                }
+            }
+            if (availability != null) {
+                t = availability.nextAvailable(t);
+                if (t == -1) {
+                    return -1;
+                }
+            }
+            if (t == time) {
+                return t;
+            }
+            time = t;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The last time at or before the given one that lies in an
+     *         enabled unit, or -1 if none is found
+     */
+    private long previousEnabledTime(long time) {
+        final UnitSet disabled = mLabeler.getDisabledUnits();
+        final Availability availability = mLabeler.getAvailability();
+        for (int i = 0; i < MAX_SKIPS; i++) {
+            long t = time;
+            if (disabled != null) {
+                final long index = mLabeler.getUnitIndex(t);
+                final long clear = disabled.previousClear(index);
+                if (clear != index) {
+                    t = mLabeler.getUnitTime(clear + 1) - 1;
+                }
+            }
+            if (availability != null) {
+                t = availability.previousAvailable(t);
+                if (t == -1) {
+                    return -1;
+                }
+            }
+            if (t == time) {
+                return t;
+            }
+            time = t;
+        }
+        return -1;
+    }
+
     public void setOnScrollListener(OnScrollListener l) {
         listener = l;
     }
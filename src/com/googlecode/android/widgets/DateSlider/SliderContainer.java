@@ -1,5 +1,6 @@
 package com.googlecode.android.widgets.DateSlider;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 
 
@@ -9,6 +10,12 @@ import android.util.AttributeSet;
 import android.view.View;
 import android.widget.LinearLayout;
 
+import com.googlecode.android.widgets.DateSlider.labeler.Availability;
+import com.googlecode.android.widgets.DateSlider.labeler.EventIndex;
+import com.googlecode.android.widgets.DateSlider.labeler.LabelWarmer;
+import com.googlecode.android.widgets.DateSlider.labeler.Labeler;
+import com.googlecode.android.widgets.DateSlider.labeler.UnitSet;
+
 /**
  * This is a container class for ScrollLayouts. It coordinates the scrolling
  * between them, so that if one is scrolled, the others are scrolled to
@@ -19,6 +26,10 @@ public class SliderContainer extends LinearLayout {
     private Calendar mTime = null;
     private OnTimeChangeListener mOnTimeChangeListener;
     private int minuteInterval;
+    /**
+     * The disabled units installed by {@link #setDisabledRanges(long[], long[])}
+     */
+    private final ArrayList<UnitSet> mDisabledSets = new ArrayList<UnitSet>();
 
     public SliderContainer(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -102,6 +113,165 @@ public class SliderContainer extends LinearLayout {
         }
     }
     
+    /**
+     * disables the units that lie within the given ranges of time, such as
+     * booked days, so that they are greyed out and can't be selected. Every
+     * ScrollLayout whose labeler numbers its units disables the units that
+     * fit in a range: a booked day disables that day on the day slider and
+     * each of its minutes on the minute slider, but not the month that
+     * contains it.
+     *
+     * Only the sets installed by an earlier call are replaced or removed;
+     * ScrollLayouts that no range covers a unit of keep the disabled units
+     * set on them directly.
+     *
+     * @param starts the starts of the ranges, or null to enable the units
+     *        disabled by earlier calls again
+     * @param ends the ends of the ranges (exclusive)
+     */
+    public void setDisabledRanges(long[] starts, long[] ends) {
+        if (starts != null && (ends == null || ends.length != starts.length)) {
+            throw new IllegalArgumentException("Every range needs a start and an end");
+        }
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View v = getChildAt(i);
+            if (v instanceof ScrollLayout) {
+                ScrollLayout scroller = (ScrollLayout)v;
+                Labeler labeler = scroller.getLabeler();
+                if (!labeler.hasUnitIndex()) {
+                    continue;
+                }
+                final UnitSet units = new UnitSet();
+                for (int k = 0; starts != null && k < starts.length; k++) {
+                    long first = labeler.getUnitIndex(starts[k]);
+                    if (labeler.getUnitTime(first) < starts[k]) {
+                        first++;
+                    }
+                    // the unit containing the end runs past it
+                    final long last = labeler.getUnitIndex(ends[k]) - 1;
+                    units.add(first, last);
+                }
+                final boolean installed = isInstalled(scroller.getDisabledUnits());
+                if (!units.isEmpty()) {
+                    mDisabledSets.remove(scroller.getDisabledUnits());
+                    mDisabledSets.add(units);
+                    scroller.setDisabledUnits(units);
+                } else if (installed) {
+                    mDisabledSets.remove(scroller.getDisabledUnits());
+                    scroller.setDisabledUnits(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the set was installed by {@link #setDisabledRanges(long[], long[])}
+     */
+    private boolean isInstalled(UnitSet units) {
+        for (UnitSet installed : mDisabledSets) {
+            if (installed == units) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * sets the rule for the times that can be selected, e.g. weekdays from
+     * 09:00 to 17:30. Every ScrollLayout greys out its units that contain no
+     * available time, so the day slider greys out the weekend and the hour
+     * slider the night.
+     *
+     * @param availability the rule, or null if every time is available
+     */
+    public void setAvailability(Availability availability) {
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View v = getChildAt(i);
+            if (v instanceof ScrollLayout) {
+                ScrollLayout scroller = (ScrollLayout)v;
+                scroller.setAvailability(availability);
+            }
+        }
+    }
+
+    /**
+     * shows in every ScrollLayout how many of the events each unit contains,
+     * e.g. to scrub through logged events by day and hour.
+     *
+     * @param events the events, or null to hide the density bars
+     */
+    public void setEventIndex(EventIndex events) {
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View v = getChildAt(i);
+            if (v instanceof ScrollLayout) {
+                ScrollLayout scroller = (ScrollLayout)v;
+                scroller.setEventIndex(events);
+            }
+        }
+    }
+
+    /**
+     * makes every ScrollLayout stop only at the events of the index passed
+     * to {@link #setEventIndex(EventIndex)}, so that the sliders scrub from
+     * event to event.
+     *
+     * @param snap true to snap to events
+     */
+    public void setSnapToEvents(boolean snap) {
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View v = getChildAt(i);
+            if (v instanceof ScrollLayout) {
+                ScrollLayout scroller = (ScrollLayout)v;
+                scroller.setSnapToEvents(snap);
+            }
+        }
+    }
+
+    /**
+     * recounts the events of the units in view, after events have been
+     * appended to the index passed to {@link #setEventIndex(EventIndex)}.
+     */
+    public void refreshDensity() {
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View v = getChildAt(i);
+            if (v instanceof ScrollLayout) {
+                ScrollLayout scroller = (ScrollLayout)v;
+                scroller.refreshDensity();
+            }
+        }
+    }
+
+    /**
+     * labels and flags the units around the current time in the background,
+     * so that browsing them doesn't build zone tables or format labels on
+     * the UI thread, e.g. the next 90 days of a DateTimeSlider. See
+     * {@link LabelWarmer} for what is warmed.
+     *
+     * @param before how far before the current time to label, in milliseconds
+     * @param after how far after the current time to label, in milliseconds
+     * @return the warm-up, which should be cancelled when the sliders go away
+     */
+    public LabelWarmer warmUp(long before, long after) {
+        if (mTime==null) {
+            throw new RuntimeException("You have to call setTime before warming up!");
+        }
+        final ArrayList<Labeler> labelers = new ArrayList<Labeler>();
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View v = getChildAt(i);
+            if (v instanceof ScrollLayout) {
+                labelers.add(((ScrollLayout)v).getLabeler());
+            }
+        }
+        final long time = mTime.getTimeInMillis();
+        return LabelWarmer.start(labelers.toArray(new Labeler[labelers.size()]), time, time - before, time + after);
+    }
+
     /**
      * sets the minute interval of the scroll layouts.
      * @param minInterval
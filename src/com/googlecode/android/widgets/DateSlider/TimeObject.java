@@ -3,13 +3,62 @@ package com.googlecode.android.widgets.DateSlider;
 /**
  * Very simple helper class that defines a time unit with a label (text) its start-
  * and end date
+ *
+ * The label is divided into a primary, a secondary and an optional tertiary
+ * part, each separated from the next by one character: the primary part is
+ * text[0, primaryEnd), the secondary part text[primaryEnd + 1, secondaryEnd)
+ * and the tertiary part the rest after secondaryEnd + 1. Views that show the
+ * parts on separate lines use these ranges rather than looking for spaces in
+ * the text. See {@link LabelText}.
+ *
+ * The flags describe the unit for the views to style it by, such as
+ * {@link #WEEKEND} or {@link #TODAY}. Labelers work them out once per unit
+ * (see {@link com.googlecode.android.widgets.DateSlider.labeler.Labeler#getFlags(long, long)}),
+ * so that the views don't need a Calendar to find out.
  */
 public class TimeObject {
+    /**
+     * The unit lies within the weekend of the default locale
+     */
+    public static final int WEEKEND = 1;
+    /**
+     * The unit contains the current time, i.e. it is today for a day
+     */
+    public static final int TODAY = 1 << 1;
+    /**
+     * The unit is a holiday, according to the labeler's HolidayProvider
+     */
+    public static final int HOLIDAY = 1 << 2;
+    /**
+     * The unit lies outside of the range of times that can be selected
+     */
+    public static final int OUT_OF_RANGE = 1 << 3;
+    /**
+     * The unit can't be selected: it is one of the labeler's disabled units,
+     * or it contains no time that its Availability allows
+     */
+    public static final int DISABLED = 1 << 4;
+
     public final CharSequence text;
     public final long startTime, endTime;
+    public final int primaryEnd, secondaryEnd;
+    public final int flags;
     public TimeObject(final CharSequence text, final long startTime, final long endTime) {
+        this(text, LabelText.primaryEnd(text), LabelText.secondaryEnd(text), startTime, endTime);
+    }
+
+    public TimeObject(final CharSequence text, final int primaryEnd, final int secondaryEnd,
+            final long startTime, final long endTime) {
+        this(text, primaryEnd, secondaryEnd, startTime, endTime, 0);
+    }
+
+    public TimeObject(final CharSequence text, final int primaryEnd, final int secondaryEnd,
+            final long startTime, final long endTime, final int flags) {
         this.text = text;
+        this.primaryEnd = primaryEnd;
+        this.secondaryEnd = secondaryEnd;
         this.startTime = startTime;
         this.endTime = endTime;
+        this.flags = flags;
     }
 }
\ No newline at end of file
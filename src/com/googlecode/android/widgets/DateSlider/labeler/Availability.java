@@ -0,0 +1,267 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Calendar;
+
+/**
+ * A recurring rule for the times that can be selected, such as "weekdays,
+ * 09:00 to 17:30, every 15 minutes, except 12:00 to 13:00". A unit is
+ * available if it contains at least one available minute; units that don't
+ * are flagged with
+ * {@link com.googlecode.android.widgets.DateSlider.TimeObject#DISABLED}, see
+ * {@link Labeler#setAvailability(Availability)}.
+ *
+ * The rule is compiled into tables over the 1440 minutes of a day: how many
+ * minutes up to each minute are available, and the next and previous
+ * available minute from each minute. Checking a unit then only takes the day
+ * of the week and the minutes of day of its start and end, and at most a
+ * week of days for longer units, however far the unit is from today.
+ *
+ * Times are local times of the default time zone. The rule isn't
+ * synchronized; Labeler keeps a copy of the rule it is given.
+ */
+public final class Availability {
+    private static final int MINUTES = 24 * 60;
+    private static final int ALL_DAYS = WeekendDays.bit(Calendar.SUNDAY) | WeekendDays.bit(Calendar.MONDAY)
+            | WeekendDays.bit(Calendar.TUESDAY) | WeekendDays.bit(Calendar.WEDNESDAY)
+            | WeekendDays.bit(Calendar.THURSDAY) | WeekendDays.bit(Calendar.FRIDAY)
+            | WeekendDays.bit(Calendar.SATURDAY);
+
+    private int mDays = ALL_DAYS;
+    private int mStartMinute = 0, mEndMinute = MINUTES;
+    private int mStep = 1;
+    /**
+     * The excluded ranges of minutes of the day, as start, end pairs
+     */
+    private int[] mExcluded = new int[0];
+
+    /**
+     * The number of available minutes before each minute of the day, and in
+     * the whole day at index MINUTES
+     */
+    private int[] mCount;
+    /**
+     * The first available minute at or after, and the last one at or before,
+     * each minute of the day, or -1 if there is none that day
+     */
+    private short[] mNext, mPrevious;
+
+    /**
+     * Creates a rule under which every time is available.
+     */
+    public Availability() {
+        compile();
+    }
+
+    /**
+     * Creates a copy of another rule.
+     */
+    public Availability(Availability other) {
+        mDays = other.mDays;
+        mStartMinute = other.mStartMinute;
+        mEndMinute = other.mEndMinute;
+        mStep = other.mStep;
+        mExcluded = other.mExcluded.clone();
+        mCount = other.mCount;
+        mNext = other.mNext;
+        mPrevious = other.mPrevious;
+    }
+
+    /**
+     * Restricts the available times to some days of the week.
+     *
+     * @param daysOfWeek The available days, as Calendar.SUNDAY..SATURDAY
+     * @return This rule
+     */
+    public Availability setDays(int... daysOfWeek) {
+        int days = 0;
+        for (int day : daysOfWeek) {
+            if (day < Calendar.SUNDAY || day > Calendar.SATURDAY) {
+                throw new IllegalArgumentException("Invalid day of the week " + day);
+            }
+            days |= WeekendDays.bit(day);
+        }
+        mDays = days;
+        return this;
+    }
+
+    /**
+     * Restricts the available times to a range of each day.
+     *
+     * @param startMinute The first available minute of the day, e.g. 540 for 09:00
+     * @param endMinute The minute of the day at which the range ends,
+     *        exclusive, e.g. 1050 for 17:30
+     * @return This rule
+     */
+    public Availability setHours(int startMinute, int endMinute) {
+        checkRange(startMinute, endMinute);
+        mStartMinute = startMinute;
+        mEndMinute = endMinute;
+        compile();
+        return this;
+    }
+
+    /**
+     * Only makes every step-th minute of the day available, counting from
+     * midnight, e.g. 15 for the quarter hours.
+     *
+     * @param minutes The step, in minutes
+     * @return This rule
+     */
+    public Availability setStep(int minutes) {
+        if (minutes < 1 || minutes > MINUTES) {
+            throw new IllegalArgumentException("Invalid step " + minutes);
+        }
+        mStep = minutes;
+        compile();
+        return this;
+    }
+
+    /**
+     * Excludes a range of each day, such as the lunch hour. Ranges add up.
+     *
+     * @param startMinute The first excluded minute of the day
+     * @param endMinute The minute of the day at which the range ends, exclusive
+     * @return This rule
+     */
+    public Availability exclude(int startMinute, int endMinute) {
+        checkRange(startMinute, endMinute);
+        int[] excluded = new int[mExcluded.length + 2];
+        System.arraycopy(mExcluded, 0, excluded, 0, mExcluded.length);
+        excluded[mExcluded.length] = startMinute;
+        excluded[mExcluded.length + 1] = endMinute;
+        mExcluded = excluded;
+        compile();
+        return this;
+    }
+
+    private static void checkRange(int startMinute, int endMinute) {
+        if (startMinute < 0 || endMinute > MINUTES || startMinute > endMinute) {
+            throw new IllegalArgumentException("Invalid range of minutes " + startMinute + "-" + endMinute);
+        }
+    }
+
+    private void compile() {
+        final boolean[] available = new boolean[MINUTES];
+        for (int m = mStartMinute; m < mEndMinute; m++) {
+            available[m] = m % mStep == 0;
+        }
+        for (int i = 0; i < mExcluded.length; i += 2) {
+            for (int m = mExcluded[i]; m < mExcluded[i + 1]; m++) {
+                available[m] = false;
+            }
+        }
+        // new arrays rather than updating the old ones, which copies share
+        final int[] count = new int[MINUTES + 1];
+        final short[] next = new short[MINUTES];
+        final short[] previous = new short[MINUTES];
+        short last = -1;
+        for (int m = 0; m < MINUTES; m++) {
+            count[m + 1] = count[m] + (available[m] ? 1 : 0);
+            if (available[m]) {
+                last = (short)m;
+            }
+            previous[m] = last;
+        }
+        last = -1;
+        for (int m = MINUTES - 1; m >= 0; m--) {
+            if (available[m]) {
+                last = (short)m;
+            }
+            next[m] = last;
+        }
+        mCount = count;
+        mNext = next;
+        mPrevious = previous;
+    }
+
+    /**
+     * @return true if the day has available minutes between the two minutes
+     *         of the day, inclusive
+     */
+    private boolean isAvailable(long day, int fromMinute, int toMinute) {
+        return (mDays & WeekendDays.bit(CivilTime.dayOfWeek(day))) != 0
+                && mCount[toMinute + 1] > mCount[fromMinute];
+    }
+
+    /**
+     * @param startTime The start time of a unit
+     * @param endTime The end time of the unit
+     * @return true if the unit contains an available minute
+     */
+    public boolean isAvailable(long startTime, long endTime) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long localStart = z.toLocal(startTime);
+        final long localEnd = z.toLocal(endTime);
+        final long startDay = CivilTime.floorDiv(localStart, CivilTime.DAY);
+        final long endDay = CivilTime.floorDiv(localEnd, CivilTime.DAY);
+        final int startMinute = (int)(CivilTime.floorMod(localStart, CivilTime.DAY) / CivilTime.MINUTE);
+        final int endMinute = (int)(CivilTime.floorMod(localEnd, CivilTime.DAY) / CivilTime.MINUTE);
+        if (startDay == endDay) {
+            return isAvailable(startDay, startMinute, endMinute);
+        }
+        if (isAvailable(startDay, startMinute, MINUTES - 1) || isAvailable(endDay, 0, endMinute)) {
+            return true;
+        }
+        if (mCount[MINUTES] == 0) {
+            return false;
+        }
+        // the days in between are whole days, and a week of them covers
+        // every day of the week
+        final long last = Math.min(endDay - 1, startDay + 7);
+        for (long day = startDay + 1; day <= last; day++) {
+            if ((mDays & WeekendDays.bit(CivilTime.dayOfWeek(day))) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The first available time at or after the given time, or -1 if
+     *         no time is available
+     */
+    public long nextAvailable(long time) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long local = z.toLocal(time);
+        final long day = CivilTime.floorDiv(local, CivilTime.DAY);
+        final int minute = (int)(CivilTime.floorMod(local, CivilTime.DAY) / CivilTime.MINUTE);
+        for (long d = day; d <= day + 7; d++) {
+            if ((mDays & WeekendDays.bit(CivilTime.dayOfWeek(d))) == 0) {
+                continue;
+            }
+            final int m = mNext[d == day ? minute : 0];
+            if (m == minute && d == day) {
+                return time;
+            }
+            if (m >= 0) {
+                return z.toUtcCeiling(d * CivilTime.DAY + m * CivilTime.MINUTE);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The last available time at or before the given time, or -1 if
+     *         no time is available
+     */
+    public long previousAvailable(long time) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long local = z.toLocal(time);
+        final long day = CivilTime.floorDiv(local, CivilTime.DAY);
+        final int minute = (int)(CivilTime.floorMod(local, CivilTime.DAY) / CivilTime.MINUTE);
+        for (long d = day; d >= day - 7; d--) {
+            if ((mDays & WeekendDays.bit(CivilTime.dayOfWeek(d))) == 0) {
+                continue;
+            }
+            final int m = mPrevious[d == day ? minute : MINUTES - 1];
+            if (m == minute && d == day) {
+                return time;
+            }
+            if (m >= 0) {
+                // the last instant of the minute
+                return z.toUtcCeiling(d * CivilTime.DAY + (m + 1) * CivilTime.MINUTE) - 1;
+            }
+        }
+        return -1;
+    }
+}
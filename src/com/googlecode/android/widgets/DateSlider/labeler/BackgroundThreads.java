@@ -0,0 +1,44 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the background threads that the labelers' helpers run on. They
+ * are daemon threads, so that they don't keep the process alive.
+ */
+final class BackgroundThreads {
+    private BackgroundThreads() {
+    }
+
+    /**
+     * @param name The name of the thread
+     * @param priority The priority of the thread
+     * @return An executor that runs tasks one at a time on a single thread
+     */
+    static ExecutorService newSingleThreadExecutor(final String name, final int priority) {
+        return Executors.newSingleThreadExecutor(newThreadFactory(name, priority));
+    }
+
+    /**
+     * @param name The name of the threads
+     * @param threads The number of threads
+     * @param priority The priority of the threads
+     * @return An executor that runs tasks on a fixed number of threads
+     */
+    static ExecutorService newFixedThreadPool(final String name, int threads, final int priority) {
+        return Executors.newFixedThreadPool(threads, newThreadFactory(name, priority));
+    }
+
+    private static ThreadFactory newThreadFactory(final String name, final int priority) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                t.setPriority(priority);
+                return t;
+            }
+        };
+    }
+}
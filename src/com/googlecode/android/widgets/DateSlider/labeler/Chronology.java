@@ -0,0 +1,82 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Locale;
+
+/**
+ * A calendar system, mapping day numbers (see {@link CivilTime}) to and from
+ * year/month/day dates. Dates are packed into an int as by
+ * {@link CivilTime#pack(int, int, int)}, with zero-based months, so converting
+ * doesn't allocate. Every chronology has 12 months a year.
+ *
+ * The non-Gregorian chronologies are table-driven: the start of each year and
+ * month is looked up in precomputed arrays, so converting a date is a few
+ * array lookups rather than a Calendar computation.
+ */
+public abstract class Chronology {
+    /**
+     * The proleptic Gregorian calendar
+     */
+    public static final Chronology GREGORIAN = new GregorianChronology();
+    /**
+     * The tabular Islamic (Hijri) calendar, in its civil form
+     */
+    public static final Chronology HIJRI = new HijriChronology();
+    /**
+     * The Solar Hijri (Persian) calendar
+     */
+    public static final Chronology PERSIAN = new PersianChronology();
+
+    /**
+     * @param name The name of a chronology, as returned by {@link #getName()}
+     * @return The chronology
+     */
+    public static Chronology forName(String name) {
+        if (GREGORIAN.getName().equalsIgnoreCase(name)) {
+            return GREGORIAN;
+        } else if (HIJRI.getName().equalsIgnoreCase(name)) {
+            return HIJRI;
+        } else if (PERSIAN.getName().equalsIgnoreCase(name)) {
+            return PERSIAN;
+        }
+        throw new IllegalArgumentException("Unknown chronology: " + name);
+    }
+
+    /**
+     * @return The name of the chronology, e.g. "hijri"
+     */
+    public abstract String getName();
+
+    /**
+     * @param days The number of days since the epoch
+     * @return The packed date of that day
+     */
+    public abstract int fromDays(long days);
+
+    /**
+     * @param year The year
+     * @param month The zero-based month
+     * @param day The day of the month, starting at 1
+     * @return The number of days between the epoch and the date
+     */
+    public abstract long toDays(int year, int month, int day);
+
+    /**
+     * @param year The year
+     * @param month The zero-based month
+     * @return The number of days in the month
+     */
+    public abstract int getDaysInMonth(int year, int month);
+
+    /**
+     * @param month The zero-based month
+     * @param locale The locale to name it in
+     * @return The name of the month. Names of several words are joined with
+     *         no-break spaces, so that they aren't wrapped across lines.
+     */
+    public abstract String getMonthName(int month, Locale locale);
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
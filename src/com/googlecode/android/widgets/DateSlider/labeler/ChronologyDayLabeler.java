@@ -0,0 +1,11 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * A Labeler that displays days of any chronology; see {@link ChronologyLabeler}.
+ */
+public class ChronologyDayLabeler extends ChronologyLabeler {
+
+    public ChronologyDayLabeler(String formatString) {
+        super(formatString, DAYS, 150, 60);
+    }
+}
@@ -0,0 +1,189 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Locale;
+
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
+import com.googlecode.android.widgets.DateSlider.TimeObject;
+
+/**
+ * A Labeler of years, months or days in any {@link Chronology}. Units are
+ * numbered by their dates -- years by the year, months by year * 12 + month,
+ * and days by the day number -- so getting, adding and filling units is
+ * integer arithmetic plus the chronology's table lookups.
+ *
+ * java.util.Formatter only knows the Gregorian calendar, so the label is the
+ * format string applied to the year, the one-based month, the day of the
+ * month, the month name and the start time of the unit, in that order. For
+ * instance "%4$s %1$d" labels months with the name and year, and "%3$d %5$ta"
+ * days with the day of the month and the day of the week.
+ *
+ * The chronology defaults to Gregorian. When the labeler is created from a
+ * layout, it is taken from the labelerChronology attribute.
+ */
+public abstract class ChronologyLabeler extends Labeler {
+    protected static final int YEARS = 0;
+    protected static final int MONTHS = 1;
+    protected static final int DAYS = 2;
+
+    private final String mFormatString;
+    private final int mUnit;
+    private Chronology mChronology = Chronology.GREGORIAN;
+    /**
+     * The key of this labeler's labels in the LabelStore, which must tell
+     * apart the same format string in different chronologies
+     */
+    private String mStoreKey;
+
+    /**
+     * @param formatString The format string
+     * @param unit YEARS, MONTHS or DAYS
+     */
+    protected ChronologyLabeler(String formatString, int unit, int viewWidthDP, int viewHeightDP) {
+        super(viewWidthDP, viewHeightDP);
+        mFormatString = formatString;
+        mUnit = unit;
+        mStoreKey = mChronology.getName() + ':' + formatString;
+    }
+
+    public void setChronology(Chronology chronology) {
+        if (chronology != mChronology) {
+            // the cached TimeObjects are the units of the old chronology
+            clearCache();
+        }
+        mChronology = chronology;
+        mStoreKey = chronology.getName() + ':' + mFormatString;
+    }
+
+    public Chronology getChronology() {
+        return mChronology;
+    }
+
+    @Override
+    public TimeObject add(long time, int val) {
+        MutableTimeObject out = new MutableTimeObject();
+        add(time, val, out);
+        return out.toTimeObject();
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        long index = unitIndex(z, time) + val;
+        // a time zone transition can skip a whole day, which is never labeled
+        while (isSkipped(z, index)) {
+            index += val < 0 ? -1 : 1;
+        }
+        setUnit(z, index, out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        setUnit(z, unitIndex(z, time), out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        if (count <= 0) {
+            return;
+        }
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        long index = unitIndex(z, time);
+        int anchor = off - first;
+        for (; anchor < off; anchor++) {
+            index = nextUnit(z, index, 1);
+        }
+        for (; anchor >= off + count; anchor--) {
+            index = nextUnit(z, index, -1);
+        }
+        long i = index;
+        for (int k = anchor; k < off + count; k++) {
+            setUnit(z, i, out[k]);
+            i = nextUnit(z, i, 1);
+        }
+        i = index;
+        for (int k = anchor - 1; k >= off; k--) {
+            i = nextUnit(z, i, -1);
+            setUnit(z, i, out[k]);
+        }
+    }
+
+    @Override
+    public boolean hasUnitIndex() {
+        return true;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        return unitIndex(ZoneOffsets.getDefault(), time);
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        return ZoneOffsets.getDefault().toUtc(unitStart(index) * CivilTime.DAY);
+    }
+
+    @Override
+    protected long getUnitStart(long time) {
+        return getUnitTime(getUnitIndex(time));
+    }
+
+    @Override
+    protected TimeObject timeObjectfromTime(long time) {
+        MutableTimeObject out = new MutableTimeObject();
+        getElem(time, out);
+        return out.toTimeObject();
+    }
+
+    private long unitIndex(ZoneOffsets z, long time) {
+        final long day = CivilTime.floorDiv(z.toLocal(time), CivilTime.DAY);
+        if (mUnit == DAYS) {
+            return day;
+        }
+        final int date = mChronology.fromDays(day);
+        return mUnit == YEARS ? CivilTime.year(date) : CivilTime.year(date) * 12L + CivilTime.month(date);
+    }
+
+    /**
+     * @return The day number of the first day of a unit
+     */
+    private long unitStart(long index) {
+        switch (mUnit) {
+        case YEARS:
+            return mChronology.toDays((int)index, 0, 1);
+        case MONTHS:
+            return mChronology.toDays((int)CivilTime.floorDiv(index, 12), (int)CivilTime.floorMod(index, 12), 1);
+        default:
+            return index;
+        }
+    }
+
+    private long nextUnit(ZoneOffsets z, long index, int direction) {
+        do {
+            index += direction;
+        } while (isSkipped(z, index));
+        return index;
+    }
+
+    /**
+     * @return true if a time zone transition skips over the whole of a unit
+     */
+    private boolean isSkipped(ZoneOffsets z, long index) {
+        return mUnit == DAYS && z.toLocal(z.toUtc(index * CivilTime.DAY)) >= (index + 1) * CivilTime.DAY;
+    }
+
+    private void setUnit(ZoneOffsets z, long index, MutableTimeObject out) {
+        final long startDay = unitStart(index);
+        final long startTime = z.toUtc(startDay * CivilTime.DAY);
+        final long endTime = z.toUtc(unitStart(index + 1) * CivilTime.DAY - 1);
+        CharSequence label = LabelStore.get(getClass(), mStoreKey, startTime);
+        if (label == null) {
+            final int date = mChronology.fromDays(startDay);
+            final int month = CivilTime.month(date);
+            label = LabelStore.put(getClass(), mStoreKey, startTime,
+                    LabelFormat.formatParts(mFormatString, CivilTime.year(date), month + 1, CivilTime.day(date),
+                            mChronology.getMonthName(month, Locale.getDefault()), startTime));
+        }
+        out.set(label, startTime, endTime);
+    }
+}
@@ -0,0 +1,11 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * A Labeler that displays months of any chronology; see {@link ChronologyLabeler}.
+ */
+public class ChronologyMonthLabeler extends ChronologyLabeler {
+
+    public ChronologyMonthLabeler(String formatString) {
+        super(formatString, MONTHS, 180, 60);
+    }
+}
@@ -0,0 +1,27 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import android.content.Context;
+
+import com.googlecode.android.widgets.DateSlider.timeview.TimeLayoutView;
+import com.googlecode.android.widgets.DateSlider.timeview.TimeView;
+
+/**
+ * A Labeler that displays months of any chronology using TimeLayoutViews.
+ */
+public class ChronologyMonthYearLabeler extends ChronologyMonthLabeler {
+    /**
+     * The format string that specifies how to display the month. Since this class
+     * uses a TimeLayoutView, the format string should consist of two strings
+     * separated by a space, such as "%4$s %1$d".
+     *
+     * @param formatString
+     */
+    public ChronologyMonthYearLabeler(String formatString) {
+        super(formatString);
+    }
+
+    @Override
+    public TimeView createView(Context context, boolean isCenterView) {
+        return new TimeLayoutView(context, isCenterView, 25, 8, 0.95f);
+    }
+}
@@ -0,0 +1,11 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * A Labeler that displays years of any chronology; see {@link ChronologyLabeler}.
+ */
+public class ChronologyYearLabeler extends ChronologyLabeler {
+
+    public ChronologyYearLabeler(String formatString) {
+        super(formatString, YEARS, 200, 60);
+    }
+}
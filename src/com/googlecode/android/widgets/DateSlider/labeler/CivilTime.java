@@ -0,0 +1,119 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Calendar;
+
+/**
+ * Calendar-free date arithmetic on primitive values. Days are counted from
+ * the epoch (1970-01-01 is day 0) and converted to and from proleptic
+ * Gregorian year/month/day triples with the days-from-civil and
+ * civil-from-days algorithms, so no Calendar object is needed to find the
+ * boundaries of a year, month, week or day.
+ *
+ * A civil date is returned packed into a single int (see {@link #pack(int, int, int)})
+ * so that the conversion doesn't allocate. Months are zero-based, like
+ * Calendar.MONTH, and days of the week use the Calendar.SUNDAY..SATURDAY
+ * constants.
+ */
+final class CivilTime {
+    public static final long SECOND = 1000L;
+    public static final long MINUTE = 60 * SECOND;
+    public static final long HOUR = 60 * MINUTE;
+    public static final long DAY = 24 * HOUR;
+
+    private CivilTime() {
+    }
+
+    public static long floorDiv(long a, long b) {
+        long q = a / b;
+        return (a % b != 0 && (a ^ b) < 0) ? q - 1 : q;
+    }
+
+    public static long floorMod(long a, long b) {
+        return a - floorDiv(a, b) * b;
+    }
+
+    /**
+     * Packs a civil date into an int.
+     *
+     * @param year The year
+     * @param month The zero-based month
+     * @param day The day of the month, starting at 1
+     * @return The packed date
+     */
+    public static int pack(int year, int month, int day) {
+        return (year << 9) | (month << 5) | day;
+    }
+
+    public static int year(int packed) {
+        return packed >> 9;
+    }
+
+    public static int month(int packed) {
+        return (packed >> 5) & 0xF;
+    }
+
+    public static int day(int packed) {
+        return packed & 0x1F;
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    public static int daysInMonth(int year, int month) {
+        switch (month) {
+        case Calendar.FEBRUARY:
+            return isLeapYear(year) ? 29 : 28;
+        case Calendar.APRIL:
+        case Calendar.JUNE:
+        case Calendar.SEPTEMBER:
+        case Calendar.NOVEMBER:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    /**
+     * @param year The year
+     * @param month The zero-based month
+     * @param day The day of the month, starting at 1
+     * @return The number of days between the epoch and the specified date
+     */
+    public static long daysFromCivil(int year, int month, int day) {
+        // shift the year so that it starts in March, which puts the leap day last
+        final int y = month < Calendar.MARCH ? year - 1 : year;
+        final long era = (y >= 0 ? y : y - 399) / 400;
+        final int yoe = (int)(y - era * 400);
+        final int mp = month < Calendar.MARCH ? month + 10 : month - 2;
+        final int doy = (153 * mp + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * @param days The number of days since the epoch
+     * @return The packed civil date of that day
+     */
+    public static int civilFromDays(long days) {
+        final long z = days + 719468;
+        final long era = (z >= 0 ? z : z - 146096) / 146097;
+        final int doe = (int)(z - era * 146097);
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 2 : mp - 10;
+        final int year = (int)(yoe + era * 400) + (month < Calendar.MARCH ? 1 : 0);
+        return pack(year, month, day);
+    }
+
+    /**
+     * @param days The number of days since the epoch
+     * @return The day of the week, as one of the Calendar.SUNDAY..SATURDAY constants
+     */
+    public static int dayOfWeek(long days) {
+        // the epoch was a Thursday
+        return (int)floorMod(days + 4, 7) + Calendar.SUNDAY;
+    }
+}
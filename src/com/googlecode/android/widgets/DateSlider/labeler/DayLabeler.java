@@ -1,27 +1,61 @@
 package com.googlecode.android.widgets.DateSlider.labeler;
 
-import java.util.Calendar;
-
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
 
 /**
  * A Labeler that displays days
  */
 public class DayLabeler extends Labeler {
-    private final String mFormatString;
+    private final LabelFormat mFormat;
 
     public DayLabeler(String formatString) {
         super(150, 60);
-        mFormatString = formatString;
+        mFormat = LabelFormat.forFormat(formatString);
     }
 
     @Override
     public TimeObject add(long time, int val) {
-        return timeObjectfromCalendar(Util.addDays(time, val));
+        return getElem(Util.addDays(time, val));
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        getElem(Util.addDays(time, val), out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        Util.getDay(time, mFormat, out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        Util.fillDays(time, first, mFormat, out, off, count);
+    }
+
+    @Override
+    public boolean hasUnitIndex() {
+        return true;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        return Util.getUnitIndex(Util.DAYS, 1, time);
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        return Util.getUnitTime(Util.DAYS, 1, index);
+    }
+
+    @Override
+    protected long getUnitStart(long time) {
+        return Util.getDayStart(time);
     }
 
     @Override
-    protected TimeObject timeObjectfromCalendar(Calendar c) {
-        return Util.getDay(c, mFormatString);
+    protected TimeObject timeObjectfromTime(long time) {
+        return Util.getDay(time, mFormat);
     }
 }
\ No newline at end of file
@@ -0,0 +1,597 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import android.util.Log;
+
+import com.googlecode.android.widgets.DateSlider.LabelText;
+
+/**
+ * An on-disk tier of the {@link LabelStore}, so that the labels formatted in
+ * one run of the app are there in the next one rather than being formatted
+ * again when the first picker opens. See
+ * {@link LabelStore#setDiskStore(DiskLabelStore)}.
+ *
+ * The labels are kept in one binary file, which is read through a
+ * memory-mapped ByteBuffer, so opening it reads nothing but the header, and
+ * a label is only decoded when the LabelStore misses it. The file holds the
+ * labels of one default locale and time zone, which its header records
+ * along with a version number; a file written for another version, locale
+ * or zone is ignored and replaced on the next {@link #save()}. After the
+ * header come the segments, one per labeler class and format string, each
+ * with the start times of its units in increasing order, so a label is
+ * found by a binary search over the mapped file:
+ *
+ * <pre>
+ * int magic, int version, string locale, string zone, int segments
+ * per segment: string owner, string format, int count,
+ *     long[count] start times, int[count + 1] char offsets,
+ *     short[count] primary ends, short[count] secondary ends,
+ *     char[] labels
+ * </pre>
+ *
+ * where a string is an int length followed by its chars, and a primary end
+ * of -1 marks a label that isn't a LabelText.
+ *
+ * Labels formatted since the file was opened are kept in memory until they
+ * are saved. The file is capped at a number of labels; when there are more,
+ * the labels of the units furthest from the current time are dropped.
+ *
+ * The store can be used from any thread. A save holds the lock that
+ * lookups need only to take the pending labels and to switch to the new
+ * file, not while it reads the old file and writes the new one, so that
+ * saving in the background doesn't hold up labeling on the UI thread. For
+ * the same reason, the file is mapped on a background thread when the
+ * store is first used and whenever the default locale or time zone
+ * changes; lookups miss until it has been mapped.
+ */
+public final class DiskLabelStore {
+    private static final String TAG = "DiskLabelStore";
+    private static final int MAGIC = 0x44534C53;
+    private static final int VERSION = 1;
+
+    private static ExecutorService sExecutor;
+
+    private final File mFile;
+    private final int mMaxEntries;
+    /**
+     * Held by a save, so that saves don't overlap
+     */
+    private final Object mSaveLock = new Object();
+
+    /**
+     * The locale and zone the labels are for
+     */
+    private Locale mLocale;
+    private ZoneOffsets mZone;
+    /**
+     * The mapped file, or null if there is none for the locale and zone
+     */
+    private ByteBuffer mBuffer;
+    /**
+     * The position of each segment in mBuffer, by owner class name and
+     * format. The map is replaced rather than changed, so a save can read it
+     * without the lock.
+     */
+    private HashMap<String, HashMap<String, Segment>> mSegments =
+        new HashMap<String, HashMap<String, Segment>>();
+    /**
+     * Whether mBuffer and mSegments are those of the file for mLocale and
+     * mZone, rather than empty while it is mapped in the background
+     */
+    private boolean mMapped;
+    /**
+     * The labels formatted since the file was mapped, by owner class name
+     * and format
+     */
+    private HashMap<String, HashMap<String, LinkedHashMap<Long, CharSequence>>> mPending =
+        new HashMap<String, HashMap<String, LinkedHashMap<Long, CharSequence>>>();
+    private int mPendingCount;
+
+    private static final class Segment {
+        int count;
+        int starts, offsets, primaryEnds, secondaryEnds, chars;
+        /**
+         * The number of chars of all of the labels
+         */
+        int length;
+    }
+
+    /**
+     * A mapped file and its segments
+     */
+    private static final class Mapping {
+        final ByteBuffer buffer;
+        final HashMap<String, HashMap<String, Segment>> segments;
+
+        Mapping(ByteBuffer buffer, HashMap<String, HashMap<String, Segment>> segments) {
+            this.buffer = buffer;
+            this.segments = segments;
+        }
+    }
+
+    /**
+     * @param file The file to keep the labels in, e.g. in the app's cache
+     *        directory. It is created by the first {@link #save()}.
+     * @param maxEntries The most labels that the file keeps
+     */
+    public DiskLabelStore(File file, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        mFile = file;
+        mMaxEntries = maxEntries;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = BackgroundThreads.newSingleThreadExecutor(TAG, Thread.MIN_PRIORITY);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * @param owner The labeler class that formats the label
+     * @param format The format string
+     * @param start The start time of the unit
+     * @return The label from the file, or null if it isn't there
+     */
+    synchronized CharSequence get(Class<?> owner, String format, long start) {
+        checkLocale();
+        if (mBuffer == null) {
+            return null;
+        }
+        final HashMap<String, Segment> formats = mSegments.get(owner.getName());
+        final Segment segment = formats == null ? null : formats.get(format);
+        if (segment == null) {
+            return null;
+        }
+        final ByteBuffer b = mBuffer;
+        int lo = 0, hi = segment.count - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final long s = b.getLong(segment.starts + mid * 8);
+            if (s < start) {
+                lo = mid + 1;
+            } else if (s > start) {
+                hi = mid - 1;
+            } else {
+                return readLabel(b, segment, mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The label, or null if its entry is corrupt
+     */
+    private static CharSequence readLabel(ByteBuffer b, Segment segment, int i) {
+        final int from = b.getInt(segment.offsets + i * 4);
+        final int to = b.getInt(segment.offsets + i * 4 + 4);
+        if (from < 0 || to < from || to > segment.length) {
+            return null;
+        }
+        final char[] chars = new char[to - from];
+        for (int k = 0; k < chars.length; k++) {
+            chars[k] = b.getChar(segment.chars + (from + k) * 2);
+        }
+        final String text = new String(chars);
+        final short primaryEnd = b.getShort(segment.primaryEnds + i * 2);
+        if (primaryEnd < 0) {
+            return text;
+        }
+        final short secondaryEnd = b.getShort(segment.secondaryEnds + i * 2);
+        if (secondaryEnd < primaryEnd || secondaryEnd > text.length()) {
+            return null;
+        }
+        return new LabelText(text, primaryEnd, secondaryEnd);
+    }
+
+    /**
+     * Remembers a newly formatted label, to be written by the next
+     * {@link #save()}.
+     */
+    synchronized void record(Class<?> owner, String format, long start, CharSequence label) {
+        checkLocale();
+        addPending(owner.getName(), format, start, label);
+    }
+
+    private void addPending(String owner, String format, long start, CharSequence label) {
+        if (mPendingCount >= mMaxEntries) {
+            return;
+        }
+        HashMap<String, LinkedHashMap<Long, CharSequence>> formats = mPending.get(owner);
+        if (formats == null) {
+            formats = new HashMap<String, LinkedHashMap<Long, CharSequence>>();
+            mPending.put(owner, formats);
+        }
+        LinkedHashMap<Long, CharSequence> labels = formats.get(format);
+        if (labels == null) {
+            labels = new LinkedHashMap<Long, CharSequence>();
+            formats.put(format, labels);
+        }
+        if (labels.put(start, label) == null) {
+            mPendingCount++;
+        }
+    }
+
+    /**
+     * Starts mapping the file again if the default locale or time zone
+     * changed, since its labels and the pending ones are only valid for the
+     * old ones. Mapping reads the header of every segment, so it is left to
+     * the background thread, and lookups miss until it is done.
+     */
+    private void checkLocale() {
+        final Locale locale = Locale.getDefault();
+        final ZoneOffsets zone = ZoneOffsets.getDefault();
+        if (zone == mZone && locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        mZone = zone;
+        mPending.clear();
+        mPendingCount = 0;
+        install(null);
+        mMapped = false;
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                installIfCurrent(locale, zone, map(locale, zone), false);
+            }
+        });
+    }
+
+    private void install(Mapping mapping) {
+        mBuffer = mapping == null ? null : mapping.buffer;
+        mSegments = mapping == null ? new HashMap<String, HashMap<String, Segment>>() : mapping.segments;
+    }
+
+    /**
+     * Switches to a mapping of the file unless the locale or zone changed
+     * since it was made
+     *
+     * @param replace true to replace the mapping in use, false to only
+     *        install it if the file hasn't been mapped since the change
+     */
+    private synchronized void installIfCurrent(Locale locale, ZoneOffsets zone, Mapping mapping,
+            boolean replace) {
+        if (zone != mZone || !locale.equals(mLocale) || (mMapped && !replace)) {
+            return;
+        }
+        install(mapping);
+        mMapped = true;
+    }
+
+    /**
+     * Maps the file and reads its segments, if it was written for the
+     * given version, locale and zone
+     *
+     * @return The mapping, or null if there is no such file or it is corrupt
+     */
+    private Mapping map(Locale locale, ZoneOffsets zone) {
+        if (!mFile.exists()) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+            MappedByteBuffer b;
+            try {
+                b = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                // the mapping stays valid after the file is closed
+                raf.close();
+            }
+            if (b.getInt() != MAGIC || b.getInt() != VERSION
+                    || !readString(b).equals(locale.toString())
+                    || !readString(b).equals(zone.getTimeZone().getID())) {
+                return null;
+            }
+            final HashMap<String, HashMap<String, Segment>> segments =
+                new HashMap<String, HashMap<String, Segment>>();
+            final int count = b.getInt();
+            for (int i = 0; i < count; i++) {
+                final String owner = readString(b);
+                final String format = readString(b);
+                final Segment s = new Segment();
+                s.count = b.getInt();
+                // each label takes at least 16 bytes besides its chars
+                if (s.count < 0 || s.count > b.remaining() / 16) {
+                    throw new IllegalArgumentException("Bad label count " + s.count);
+                }
+                s.starts = b.position();
+                s.offsets = s.starts + s.count * 8;
+                s.primaryEnds = s.offsets + (s.count + 1) * 4;
+                s.secondaryEnds = s.primaryEnds + s.count * 2;
+                s.chars = s.secondaryEnds + s.count * 2;
+                s.length = b.getInt(s.offsets + s.count * 4);
+                if (s.length < 0 || s.length > (b.limit() - s.chars) / 2) {
+                    throw new IllegalArgumentException("Bad label length " + s.length);
+                }
+                b.position(s.chars + s.length * 2);
+                HashMap<String, Segment> formats = segments.get(owner);
+                if (formats == null) {
+                    formats = new HashMap<String, Segment>();
+                    segments.put(owner, formats);
+                }
+                formats.put(format, s);
+            }
+            return new Mapping(b, segments);
+        } catch (IOException e) {
+            Log.w(TAG, "Can't read " + mFile, e);
+        } catch (RuntimeException e) {
+            // a truncated or corrupt file, which the next save replaces
+            Log.w(TAG, "Ignoring corrupt " + mFile, e);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a string, checking its length against the rest of the file so
+     * that a corrupt file can't ask for a huge array
+     */
+    private static String readString(ByteBuffer b) {
+        final int length = b.getInt();
+        if (length < 0 || length > b.remaining() / 2) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = b.getChar();
+        }
+        return new String(chars);
+    }
+
+    private static final class Entry {
+        final long start;
+        final CharSequence label;
+
+        Entry(long start, CharSequence label) {
+            this.start = start;
+            this.label = label;
+        }
+    }
+
+    /**
+     * Writes the labels of the file and the ones formatted since it was
+     * mapped to a new file, which replaces the old one, and maps it. Does
+     * nothing if no labels were formatted.
+     */
+    public void save() throws IOException {
+        synchronized (mSaveLock) {
+            final Locale locale;
+            final ZoneOffsets zone;
+            ByteBuffer buffer;
+            HashMap<String, HashMap<String, Segment>> segments;
+            final boolean mapped;
+            final HashMap<String, HashMap<String, LinkedHashMap<Long, CharSequence>>> pending;
+            synchronized (this) {
+                checkLocale();
+                if (mPendingCount == 0) {
+                    return;
+                }
+                locale = mLocale;
+                zone = mZone;
+                buffer = mBuffer;
+                segments = mSegments;
+                mapped = mMapped;
+                // labels recorded from now on are left for the next save
+                pending = mPending;
+                mPending = new HashMap<String, HashMap<String, LinkedHashMap<Long, CharSequence>>>();
+                mPendingCount = 0;
+            }
+            if (!mapped) {
+                // the background mapping hasn't finished, so don't write the
+                // file without its labels
+                final Mapping current = map(locale, zone);
+                buffer = current == null ? null : current.buffer;
+                segments = current == null ? new HashMap<String, HashMap<String, Segment>>() : current.segments;
+            }
+            boolean written = false;
+            try {
+                write(locale, zone, buffer, segments, pending);
+                written = true;
+            } finally {
+                if (!written) {
+                    restorePending(locale, zone, pending);
+                }
+            }
+            installIfCurrent(locale, zone, map(locale, zone), true);
+        }
+    }
+
+    /**
+     * Puts back the pending labels of a save that failed, unless the locale
+     * or zone changed in the meantime
+     */
+    private synchronized void restorePending(Locale locale, ZoneOffsets zone,
+            HashMap<String, HashMap<String, LinkedHashMap<Long, CharSequence>>> pending) {
+        if (zone != mZone || !locale.equals(mLocale)) {
+            return;
+        }
+        for (Map.Entry<String, HashMap<String, LinkedHashMap<Long, CharSequence>>> owner : pending.entrySet()) {
+            for (Map.Entry<String, LinkedHashMap<Long, CharSequence>> format : owner.getValue().entrySet()) {
+                for (Map.Entry<Long, CharSequence> label : format.getValue().entrySet()) {
+                    addPending(owner.getKey(), format.getKey(), label.getKey(), label.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the labels of a mapped file and pending labels to a new file,
+     * which replaces the old one
+     */
+    private void write(Locale locale, ZoneOffsets zone, ByteBuffer buffer,
+            HashMap<String, HashMap<String, Segment>> segments,
+            HashMap<String, HashMap<String, LinkedHashMap<Long, CharSequence>>> pending) throws IOException {
+        // gather everything by segment, the labels of the file first
+        final HashMap<String, HashMap<String, ArrayList<Entry>>> all =
+            new HashMap<String, HashMap<String, ArrayList<Entry>>>();
+        final ArrayList<Entry> everything = new ArrayList<Entry>();
+        for (Map.Entry<String, HashMap<String, Segment>> owner : segments.entrySet()) {
+            for (Map.Entry<String, Segment> format : owner.getValue().entrySet()) {
+                final Segment s = format.getValue();
+                final ArrayList<Entry> entries = entries(all, owner.getKey(), format.getKey());
+                for (int i = 0; i < s.count; i++) {
+                    final CharSequence label = readLabel(buffer, s, i);
+                    if (label != null) {
+                        Entry e = new Entry(buffer.getLong(s.starts + i * 8), label);
+                        entries.add(e);
+                        everything.add(e);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, HashMap<String, LinkedHashMap<Long, CharSequence>>> owner : pending.entrySet()) {
+            for (Map.Entry<String, LinkedHashMap<Long, CharSequence>> format : owner.getValue().entrySet()) {
+                final ArrayList<Entry> entries = entries(all, owner.getKey(), format.getKey());
+                for (Map.Entry<Long, CharSequence> label : format.getValue().entrySet()) {
+                    Entry e = new Entry(label.getKey(), label.getValue());
+                    entries.add(e);
+                    everything.add(e);
+                }
+            }
+        }
+        // over the cap, keep the labels of the units nearest to now, which
+        // the pickers open on
+        final HashSet<Entry> dropped = new HashSet<Entry>();
+        if (everything.size() > mMaxEntries) {
+            final long now = System.currentTimeMillis();
+            Collections.sort(everything, new Comparator<Entry>() {
+                public int compare(Entry a, Entry b) {
+                    final long da = Math.abs(a.start - now), db = Math.abs(b.start - now);
+                    return da < db ? -1 : da > db ? 1 : 0;
+                }
+            });
+            for (int i = mMaxEntries; i < everything.size(); i++) {
+                dropped.add(everything.get(i));
+            }
+        }
+
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, locale.toString());
+            writeString(out, zone.getTimeZone().getID());
+            int count = 0;
+            for (HashMap<String, ArrayList<Entry>> formats : all.values()) {
+                count += formats.size();
+            }
+            out.writeInt(count);
+            for (Map.Entry<String, HashMap<String, ArrayList<Entry>>> owner : all.entrySet()) {
+                for (Map.Entry<String, ArrayList<Entry>> format : owner.getValue().entrySet()) {
+                    writeSegment(out, owner.getKey(), format.getKey(), format.getValue(), dropped);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete();
+            throw new IOException("Can't replace " + mFile);
+        }
+    }
+
+    /**
+     * Saves in the background, e.g. when a picker is closed.
+     */
+    public void saveInBackground() {
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                try {
+                    save();
+                } catch (IOException e) {
+                    Log.w(TAG, "Can't write " + mFile, e);
+                }
+            }
+        });
+    }
+
+    private static ArrayList<Entry> entries(HashMap<String, HashMap<String, ArrayList<Entry>>> all,
+            String owner, String format) {
+        HashMap<String, ArrayList<Entry>> formats = all.get(owner);
+        if (formats == null) {
+            formats = new HashMap<String, ArrayList<Entry>>();
+            all.put(owner, formats);
+        }
+        ArrayList<Entry> entries = formats.get(format);
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            formats.put(format, entries);
+        }
+        return entries;
+    }
+
+    private static void writeSegment(DataOutputStream out, String owner, String format,
+            ArrayList<Entry> entries, HashSet<Entry> dropped) throws IOException {
+        final ArrayList<Entry> kept = new ArrayList<Entry>(entries.size());
+        for (Entry e : entries) {
+            if (!dropped.contains(e)) {
+                kept.add(e);
+            }
+        }
+        Collections.sort(kept, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return a.start < b.start ? -1 : a.start > b.start ? 1 : 0;
+            }
+        });
+        // a label from the file and a pending one for the same unit are equal
+        int count = 0;
+        for (int i = 0; i < kept.size(); i++) {
+            if (count == 0 || kept.get(i).start != kept.get(count - 1).start) {
+                kept.set(count++, kept.get(i));
+            }
+        }
+        writeString(out, owner);
+        writeString(out, format);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(kept.get(i).start);
+        }
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            out.writeInt(offset);
+            offset += kept.get(i).label.length();
+        }
+        out.writeInt(offset);
+        final short[] secondaryEnds = new short[count];
+        for (int i = 0; i < count; i++) {
+            final CharSequence label = kept.get(i).label;
+            if (label instanceof LabelText) {
+                out.writeShort(((LabelText)label).getPrimaryEnd());
+                secondaryEnds[i] = (short)((LabelText)label).getSecondaryEnd();
+            } else {
+                out.writeShort(-1);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeShort(secondaryEnds[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeChars(kept.get(i).label.toString());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+}
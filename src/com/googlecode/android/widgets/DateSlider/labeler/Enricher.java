@@ -0,0 +1,46 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * Loads data-backed annotations of units, such as the number of bookings on
+ * each day, which are too slow to compute while labeling. A Labeler with an
+ * Enricher (see {@link Labeler#setEnricher(Enricher)}) labels its units as
+ * usual, and an {@link EnrichmentLoader} calls the Enricher on a background
+ * thread for the units that are on screen; the TimeViews show a placeholder
+ * until the enrichment arrives.
+ *
+ * The methods are called on a background thread, one batch at a time.
+ */
+public abstract class Enricher {
+
+    /**
+     * @param startTime The start time of a unit
+     * @param endTime The end time of the unit
+     * @return The enrichment of the unit, or null for none
+     */
+    public abstract CharSequence enrich(long startTime, long endTime);
+
+    /**
+     * Enriches a batch of units, which are normally all or part of the
+     * visible window, in increasing order. The default implementation calls
+     * {@link #enrich(long, long)} for each of them; subclasses backed by a
+     * database should override it to load the whole range in one query.
+     *
+     * @param startTimes The start times of the units
+     * @param endTimes The end times of the units
+     * @param count The number of units
+     * @param out Receives the enrichments of the units, null for none
+     */
+    public void enrich(long[] startTimes, long[] endTimes, int count, CharSequence[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = enrich(startTimes[i], endTimes[i]);
+        }
+    }
+
+    /**
+     * @return What the TimeViews show while a unit's enrichment is loading.
+     *         The default is an empty string.
+     */
+    public CharSequence getPlaceholder() {
+        return "";
+    }
+}
@@ -0,0 +1,290 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Runs an {@link Enricher} on a background executor for the units a
+ * ScrollLayout shows, and hands the results back on the UI thread.
+ *
+ * The ScrollLayout requests the whole visible window with
+ * {@link #request(long[], long[], int, Listener)} whenever it relabels its
+ * views. Units whose enrichment is cached, or already being loaded, aren't
+ * requested again, and the rest go to the Enricher as one batch. Each request
+ * replaces the window: units that scrolled out of it are dropped from the
+ * batches that haven't started yet, so a fling doesn't leave a queue of
+ * loads behind it, and batches left with nothing to do finish without
+ * calling the Enricher. Enrichments are kept in a {@link LongCache} by unit
+ * start time, so scrolling back doesn't reload them; {@link #invalidate()}
+ * discards them when the data changes. Neither the cache nor the set of
+ * units being loaded boxes the start times, so relabeling the views on
+ * every scroll frame doesn't allocate.
+ */
+public final class EnrichmentLoader {
+    private static final String TAG = "EnrichmentLoader";
+
+    private static ExecutorService sDefaultExecutor;
+    /**
+     * Cached for units whose enrichment is null, since the cache doesn't hold nulls
+     */
+    private static final CharSequence NONE = new String();
+
+    /**
+     * Receives enrichments on the UI thread
+     */
+    public interface Listener {
+        /**
+         * @param startTime The start time of the unit
+         * @param enrichment Its enrichment, or null for none
+         */
+        public void onEnriched(long startTime, CharSequence enrichment);
+    }
+
+    private final Enricher mEnricher;
+    private final Executor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LongCache<CharSequence> mCache;
+    /**
+     * The start times of the units that are being loaded, so that they aren't
+     * requested twice. There are only a few windows' worth of them, so they
+     * are searched linearly.
+     */
+    private long[] mPending = new long[16];
+    private int mPendingCount;
+    /**
+     * The start times of the current window, in increasing order
+     */
+    private long[] mWanted = new long[0];
+    private int mWantedCount;
+    private Listener mListener;
+    /**
+     * Incremented by {@link #invalidate()}, so that batches loaded from the
+     * old data aren't cached
+     */
+    private int mGeneration;
+
+    /**
+     * @param enricher The enricher to run
+     * @param executor The executor to run it on, or null for a shared
+     *        background thread
+     * @param cacheSize The number of enrichments to keep, at least 1
+     */
+    public EnrichmentLoader(Enricher enricher, Executor executor, int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cacheSize must be positive: " + cacheSize);
+        }
+        mEnricher = enricher;
+        mExecutor = executor != null ? executor : getDefaultExecutor();
+        mCache = new LongCache<CharSequence>(cacheSize);
+    }
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            sDefaultExecutor = BackgroundThreads.newSingleThreadExecutor(TAG, Thread.MIN_PRIORITY);
+        }
+        return sDefaultExecutor;
+    }
+
+    public Enricher getEnricher() {
+        return mEnricher;
+    }
+
+    /**
+     * @return What to show while an enrichment is loading
+     */
+    public CharSequence getPlaceholder() {
+        return mEnricher.getPlaceholder();
+    }
+
+    /**
+     * @param startTime The start time of a unit
+     * @param missing What to return if the enrichment hasn't been loaded
+     * @return The enrichment of the unit, possibly null, if it has been
+     *         loaded, otherwise missing
+     */
+    public synchronized CharSequence get(long startTime, CharSequence missing) {
+        final CharSequence enrichment = mCache.get(startTime);
+        if (enrichment == null) {
+            return missing;
+        }
+        return enrichment == NONE ? null : enrichment;
+    }
+
+    /**
+     * Makes the units the current window, and loads the enrichments of those
+     * that aren't cached or loading already. Must be called on the UI thread.
+     *
+     * @param startTimes The start times of the units, in increasing order
+     * @param endTimes The end times of the units
+     * @param count The number of units
+     * @param listener Receives the enrichments of this and earlier requests
+     */
+    public void request(long[] startTimes, long[] endTimes, int count, Listener listener) {
+        long[] starts = null;
+        long[] ends = null;
+        int n = 0;
+        synchronized (this) {
+            mListener = listener;
+            if (mWanted.length < count) {
+                mWanted = new long[count];
+            }
+            System.arraycopy(startTimes, 0, mWanted, 0, count);
+            mWantedCount = count;
+            for (int i = 0; i < count; i++) {
+                if (mCache.get(startTimes[i]) != null || isPending(startTimes[i])) {
+                    continue;
+                }
+                if (starts == null) {
+                    starts = new long[count - i];
+                    ends = new long[count - i];
+                }
+                starts[n] = startTimes[i];
+                ends[n] = endTimes[i];
+                n++;
+                addPending(startTimes[i]);
+            }
+        }
+        if (n > 0) {
+            mExecutor.execute(new Batch(starts, ends, n));
+        }
+    }
+
+    /**
+     * Discards the loaded enrichments, e.g. because the data behind them
+     * changed. The next request loads them again.
+     */
+    public synchronized void invalidate() {
+        mCache.clear();
+        mPendingCount = 0;
+        mGeneration++;
+    }
+
+    /**
+     * Forgets the window, so that the batches that haven't started don't
+     * load anything, and no more enrichments are delivered.
+     */
+    public synchronized void cancelAll() {
+        mWantedCount = 0;
+        mListener = null;
+        mPendingCount = 0;
+    }
+
+    private boolean isPending(long startTime) {
+        for (int i = 0; i < mPendingCount; i++) {
+            if (mPending[i] == startTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addPending(long startTime) {
+        if (mPendingCount == mPending.length) {
+            final long[] grown = new long[mPendingCount * 2];
+            System.arraycopy(mPending, 0, grown, 0, mPendingCount);
+            mPending = grown;
+        }
+        mPending[mPendingCount++] = startTime;
+    }
+
+    private void removePending(long startTime) {
+        for (int i = 0; i < mPendingCount; i++) {
+            if (mPending[i] == startTime) {
+                mPending[i] = mPending[--mPendingCount];
+                return;
+            }
+        }
+    }
+
+    private boolean isWanted(long startTime) {
+        // Arrays.binarySearch on a range needs API level 9
+        int lo = 0, hi = mWantedCount - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final long s = mWanted[mid];
+            if (s < startTime) {
+                lo = mid + 1;
+            } else if (s > startTime) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A batch of units to enrich
+     */
+    private final class Batch implements Runnable {
+        final long[] starts, ends;
+        int count;
+
+        Batch(long[] starts, long[] ends, int count) {
+            this.starts = starts;
+            this.ends = ends;
+            this.count = count;
+        }
+
+        public void run() {
+            final int generation;
+            synchronized (EnrichmentLoader.this) {
+                generation = mGeneration;
+                // drop the units that have scrolled out of the window since the request
+                int n = 0;
+                for (int i = 0; i < count; i++) {
+                    if (isWanted(starts[i])) {
+                        starts[n] = starts[i];
+                        ends[n] = ends[i];
+                        n++;
+                    } else {
+                        removePending(starts[i]);
+                    }
+                }
+                count = n;
+            }
+            if (count == 0) {
+                return;
+            }
+            final CharSequence[] results = new CharSequence[count];
+            try {
+                mEnricher.enrich(starts, ends, count, results);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Enricher failed", e);
+                synchronized (EnrichmentLoader.this) {
+                    for (int i = 0; i < count; i++) {
+                        removePending(starts[i]);
+                    }
+                }
+                return;
+            }
+            synchronized (EnrichmentLoader.this) {
+                if (generation != mGeneration) {
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    removePending(starts[i]);
+                    mCache.put(starts[i], results[i] != null ? results[i] : NONE);
+                }
+            }
+            mHandler.post(new Runnable() {
+                public void run() {
+                    final Listener listener;
+                    synchronized (EnrichmentLoader.this) {
+                        listener = mListener;
+                    }
+                    if (listener == null) {
+                        return;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        listener.onEnriched(starts[i], results[i]);
+                    }
+                }
+            });
+        }
+    }
+}
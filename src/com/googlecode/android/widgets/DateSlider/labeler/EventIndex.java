@@ -0,0 +1,184 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Arrays;
+
+/**
+ * A sorted array of event times that counts the events within a unit, so
+ * that ScrollLayout can show how dense the events are over the units it
+ * displays (see
+ * {@link com.googlecode.android.widgets.DateSlider.ScrollLayout#setEventIndex(EventIndex)}).
+ *
+ * The times are kept as one sorted long[], so counting the events of a unit
+ * takes two binary searches, and millions of events take 8 bytes each with
+ * no per-event objects. Finding the event nearest to a time, for
+ * ScrollLayout's snapping to events, is a binary search too. Appending times later than the last one is an array
+ * copy; appending earlier times only merges the tail they fall into.
+ *
+ * The index isn't synchronized, and is meant to be used on the UI thread.
+ */
+public final class EventIndex {
+    private long[] mTimes;
+    private int mSize;
+
+    /**
+     * Creates an empty index.
+     */
+    public EventIndex() {
+        mTimes = new long[16];
+    }
+
+    /**
+     * Creates an index of the given times. The index takes over the array
+     * rather than copying it, so it must not be changed afterwards.
+     *
+     * @param times The event times, in increasing order
+     * @param count The number of times in the array
+     */
+    public EventIndex(long[] times, int count) {
+        for (int i = 1; i < count; i++) {
+            if (times[i] < times[i - 1]) {
+                throw new IllegalArgumentException("Event times must be sorted, but " + times[i]
+                        + " follows " + times[i - 1]);
+            }
+        }
+        mTimes = times;
+        mSize = count;
+    }
+
+    /**
+     * @return The number of events
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Adds events to the index.
+     *
+     * @param times The event times, in any order
+     * @param off The index of the first time in the array
+     * @param count The number of times
+     */
+    public void append(long[] times, int off, int count) {
+        if (count <= 0) {
+            return;
+        }
+        if (mSize + count > mTimes.length) {
+            long[] grown = new long[Math.max(mSize + count, mTimes.length + (mTimes.length >> 1))];
+            System.arraycopy(mTimes, 0, grown, 0, mSize);
+            mTimes = grown;
+        }
+        System.arraycopy(times, off, mTimes, mSize, count);
+        Arrays.sort(mTimes, mSize, mSize + count);
+        final long first = mTimes[mSize];
+        if (mSize > 0 && first < mTimes[mSize - 1]) {
+            // only the events after the first new one need to be merged
+            final int from = upperBound(first);
+            final long[] old = new long[mSize - from];
+            System.arraycopy(mTimes, from, old, 0, old.length);
+            int i = 0, j = mSize, k = from;
+            final int end = mSize + count;
+            while (i < old.length && j < end) {
+                mTimes[k++] = old[i] <= mTimes[j] ? old[i++] : mTimes[j++];
+            }
+            while (i < old.length) {
+                mTimes[k++] = old[i++];
+            }
+        }
+        mSize += count;
+    }
+
+    /**
+     * Adds an event to the index.
+     */
+    public void append(long time) {
+        append(new long[] { time }, 0, 1);
+    }
+
+    /**
+     * @param startTime The start time of a unit
+     * @param endTime The end time of the unit, inclusive
+     * @return The number of events within the unit
+     */
+    public int count(long startTime, long endTime) {
+        if (endTime < startTime) {
+            return 0;
+        }
+        return upperBound(endTime) - lowerBound(startTime);
+    }
+
+    /**
+     * @param time A time
+     * @param direction The direction to prefer if the events on either side
+     *        are equally far: positive for later events, otherwise earlier
+     * @return The time of the event nearest to the given time
+     * @throws IllegalStateException if the index is empty
+     */
+    public long nearest(long time, int direction) {
+        if (mSize == 0) {
+            throw new IllegalStateException("No events");
+        }
+        return nearest(time, direction, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param time A time
+     * @param direction The direction to prefer if the events on either side
+     *        are equally far: positive for later events, otherwise earlier
+     * @param min The earliest event time to consider
+     * @param max The latest event time to consider
+     * @return The time of the event between min and max nearest to the given
+     *         time, or -1 if there is none
+     */
+    public long nearest(long time, int direction, long min, long max) {
+        final int first = lowerBound(min), end = upperBound(max);
+        if (first >= end) {
+            return -1;
+        }
+        final int next = Math.min(Math.max(lowerBound(time), first), end);
+        if (next == end) {
+            return mTimes[end - 1];
+        }
+        if (next == first || mTimes[next] == time) {
+            return mTimes[next];
+        }
+        final long after = mTimes[next] - time;
+        final long before = time - mTimes[next - 1];
+        if (after == before) {
+            return direction > 0 ? mTimes[next] : mTimes[next - 1];
+        }
+        return after < before ? mTimes[next] : mTimes[next - 1];
+    }
+
+    /**
+     * @return The index of the first event at or after the time
+     */
+    private int lowerBound(long time) {
+        int lo = 0, hi = mSize;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (mTimes[mid] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return The index of the first event after the time
+     */
+    private int upperBound(long time) {
+        int lo = 0, hi = mSize;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (mTimes[mid] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
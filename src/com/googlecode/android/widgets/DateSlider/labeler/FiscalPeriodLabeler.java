@@ -0,0 +1,111 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Calendar;
+
+/**
+ * A PeriodLabeler for 52/53-week fiscal years divided into periods of whole
+ * weeks, such as the 4-4-5 calendar. A fiscal year ends on a given day of the
+ * week, either the last one in a given month or the one nearest to the end of
+ * that month, so it has 53 weeks every five or six years; the extra week is
+ * added to the last period.
+ *
+ * By default, years end on the Saturday nearest to the end of December, are
+ * named after the calendar year they end in, and are divided into 4-4-5 week
+ * quarters.
+ */
+public class FiscalPeriodLabeler extends PeriodLabeler {
+    private int[] mPattern = { 4, 4, 5 };
+    private int mEndMonth = Calendar.DECEMBER;
+    private int mEndDayOfWeek = Calendar.SATURDAY;
+    private boolean mNearest = true;
+    private boolean mNamedByEnd = true;
+
+    public FiscalPeriodLabeler(String formatString) {
+        super(formatString, 120, 60);
+    }
+
+    /**
+     * Sets the lengths of the periods. The pattern is repeated until it
+     * covers 52 weeks, so { 4, 4, 5 } gives 12 periods, and { 13 } quarters.
+     *
+     * @param weeks The lengths of the periods in weeks, which must add up to
+     *        a number of weeks that divides 52
+     */
+    public void setPattern(int... weeks) {
+        int total = 0;
+        for (int w : weeks) {
+            if (w <= 0) {
+                throw new IllegalArgumentException("Periods must be at least a week long");
+            }
+            total += w;
+        }
+        if (total == 0 || 52 % total != 0) {
+            throw new IllegalArgumentException("The periods must add up to a divisor of 52 weeks");
+        }
+        mPattern = weeks.clone();
+        resetPeriods();
+    }
+
+    /**
+     * Sets the rule for the last day of the fiscal year.
+     *
+     * @param month The month in which the year ends, as a Calendar month
+     * @param dayOfWeek The day of the week on which the year ends, as one of
+     *        the Calendar.SUNDAY..SATURDAY constants
+     * @param nearest true if the year ends on the day of the week nearest to
+     *        the end of the month, which may fall early in the following month;
+     *        false if it ends on the last one within the month
+     * @param namedByEnd true if years are named after the calendar year in
+     *        which they end, false if after the one in which they start
+     */
+    public void setYearEnd(int month, int dayOfWeek, boolean nearest, boolean namedByEnd) {
+        mEndMonth = month;
+        mEndDayOfWeek = dayOfWeek;
+        mNearest = nearest;
+        mNamedByEnd = namedByEnd;
+        resetPeriods();
+    }
+
+    /**
+     * @param year A fiscal year
+     * @return The day number of the first day of the year
+     */
+    protected long getYearStart(int year) {
+        return getYearEnd(mNamedByEnd ? year - 1 : year) + 1;
+    }
+
+    /**
+     * @param year A calendar year
+     * @return The day number of the last day of the fiscal year that ends around
+     *         the end of the end month of the calendar year
+     */
+    private long getYearEnd(int year) {
+        final long monthEnd = CivilTime.daysFromCivil(year, mEndMonth, CivilTime.daysInMonth(year, mEndMonth));
+        final long last = monthEnd - CivilTime.floorMod(CivilTime.dayOfWeek(monthEnd) - mEndDayOfWeek, 7);
+        return mNearest && monthEnd - last > 3 ? last + 7 : last;
+    }
+
+    @Override
+    protected long[] getPeriodStarts(int year) {
+        final int[] pattern = mPattern;
+        int total = 0;
+        for (int w : pattern) {
+            total += w;
+        }
+        final long start = getYearStart(year);
+        // a 53rd week is simply part of the last period
+        long[] starts = new long[52 / total * pattern.length];
+        long day = start;
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = day;
+            day += 7 * pattern[i % pattern.length];
+        }
+        return starts;
+    }
+
+    @Override
+    protected int guessYear(long day) {
+        final int year = CivilTime.year(CivilTime.civilFromDays(day));
+        return mNamedByEnd && CivilTime.month(CivilTime.civilFromDays(day)) > mEndMonth ? year + 1 : year;
+    }
+}
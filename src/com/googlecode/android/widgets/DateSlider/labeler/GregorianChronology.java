@@ -0,0 +1,35 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+
+/**
+ * The proleptic Gregorian calendar, as computed by {@link CivilTime}
+ */
+final class GregorianChronology extends Chronology {
+
+    @Override
+    public String getName() {
+        return "gregorian";
+    }
+
+    @Override
+    public int fromDays(long days) {
+        return CivilTime.civilFromDays(days);
+    }
+
+    @Override
+    public long toDays(int year, int month, int day) {
+        return CivilTime.daysFromCivil(year, month, day);
+    }
+
+    @Override
+    public int getDaysInMonth(int year, int month) {
+        return CivilTime.daysInMonth(year, month);
+    }
+
+    @Override
+    public String getMonthName(int month, Locale locale) {
+        return new DateFormatSymbols(locale).getMonths()[month];
+    }
+}
@@ -0,0 +1,109 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Locale;
+
+/**
+ * The tabular Islamic calendar. Months alternately have 30 and 29 days, and
+ * the last month has a 30th day in 11 leap years of every 30-year cycle. The
+ * civil epoch, 1 Muharram 1 AH, is 16 July 622 in the Julian calendar.
+ *
+ * The calendar observed in a given country may differ from it by a day or
+ * two, as it depends on sightings of the moon.
+ */
+final class HijriChronology extends Chronology {
+    /**
+     * The day number of 1 Muharram 1 AH (19 July 622 in the proleptic Gregorian calendar)
+     */
+    private static final long EPOCH = CivilTime.daysFromCivil(622, 6, 19);
+    private static final int CYCLE_YEARS = 30;
+    private static final int CYCLE_DAYS = 10631;
+    /**
+     * The day of the cycle on which each of its years starts, and the length of the cycle
+     */
+    private static final int[] YEAR_STARTS = new int[CYCLE_YEARS + 1];
+    /**
+     * The day of the year on which each month starts, and the length of a common year
+     */
+    private static final int[] MONTH_STARTS = { 0, 30, 59, 89, 118, 148, 177, 207, 236, 266, 295, 325, 354 };
+
+    private static final String[] NAMES = {
+        "Muharram", "Safar", "Rabi\u00A0al-awwal", "Rabi\u00A0al-thani",
+        "Jumada\u00A0al-awwal", "Jumada\u00A0al-thani", "Rajab", "Sha'ban",
+        "Ramadan", "Shawwal", "Dhu\u00A0al-Qi'dah", "Dhu\u00A0al-Hijjah"
+    };
+    private static final String[] ARABIC_NAMES = {
+        "\u0645\u062D\u0631\u0645", "\u0635\u0641\u0631",
+        "\u0631\u0628\u064A\u0639\u00A0\u0627\u0644\u0623\u0648\u0644",
+        "\u0631\u0628\u064A\u0639\u00A0\u0627\u0644\u0622\u062E\u0631",
+        "\u062C\u0645\u0627\u062F\u0649\u00A0\u0627\u0644\u0623\u0648\u0644\u0649",
+        "\u062C\u0645\u0627\u062F\u0649\u00A0\u0627\u0644\u0622\u062E\u0631\u0629",
+        "\u0631\u062C\u0628", "\u0634\u0639\u0628\u0627\u0646", "\u0631\u0645\u0636\u0627\u0646",
+        "\u0634\u0648\u0627\u0644",
+        "\u0630\u0648\u00A0\u0627\u0644\u0642\u0639\u062F\u0629",
+        "\u0630\u0648\u00A0\u0627\u0644\u062D\u062C\u0629"
+    };
+
+    static {
+        for (int y = 0; y < CYCLE_YEARS; y++) {
+            YEAR_STARTS[y + 1] = YEAR_STARTS[y] + (isLeapYear(y + 1) ? 355 : 354);
+        }
+    }
+
+    /**
+     * @param year A year, or its position within the 30-year cycle
+     */
+    private static boolean isLeapYear(int year) {
+        return (14 + 11 * CivilTime.floorMod(year, CYCLE_YEARS)) % CYCLE_YEARS < 11;
+    }
+
+    @Override
+    public String getName() {
+        return "hijri";
+    }
+
+    @Override
+    public int fromDays(long days) {
+        final long d = days - EPOCH;
+        final long cycle = CivilTime.floorDiv(d, CYCLE_DAYS);
+        final int dayOfCycle = (int)(d - cycle * CYCLE_DAYS);
+        // estimate the year from the mean year length, then correct it
+        int y = Math.min(CYCLE_YEARS - 1, dayOfCycle * CYCLE_YEARS / CYCLE_DAYS);
+        while (dayOfCycle < YEAR_STARTS[y]) {
+            y--;
+        }
+        while (dayOfCycle >= YEAR_STARTS[y + 1]) {
+            y++;
+        }
+        final int dayOfYear = dayOfCycle - YEAR_STARTS[y];
+        // months are 29.5 days long on average, and the 30th day of the leap
+        // month falls past the end of the table
+        int m = Math.min(11, dayOfYear * 2 / 59);
+        while (dayOfYear < MONTH_STARTS[m]) {
+            m--;
+        }
+        while (m < 11 && dayOfYear >= MONTH_STARTS[m + 1]) {
+            m++;
+        }
+        return CivilTime.pack((int)(cycle * CYCLE_YEARS) + y + 1, m, dayOfYear - MONTH_STARTS[m] + 1);
+    }
+
+    @Override
+    public long toDays(int year, int month, int day) {
+        final long cycle = CivilTime.floorDiv(year - 1, CYCLE_YEARS);
+        final int y = (int)(year - 1 - cycle * CYCLE_YEARS);
+        return EPOCH + cycle * CYCLE_DAYS + YEAR_STARTS[y] + MONTH_STARTS[month] + day - 1;
+    }
+
+    @Override
+    public int getDaysInMonth(int year, int month) {
+        if (month == 11 && isLeapYear(year)) {
+            return 30;
+        }
+        return MONTH_STARTS[month + 1] - MONTH_STARTS[month];
+    }
+
+    @Override
+    public String getMonthName(int month, Locale locale) {
+        return "ar".equals(locale.getLanguage()) ? ARABIC_NAMES[month] : NAMES[month];
+    }
+}
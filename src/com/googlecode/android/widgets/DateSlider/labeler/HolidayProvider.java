@@ -0,0 +1,19 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * Tells a Labeler which days are holidays, so that it can flag them with
+ * {@link com.googlecode.android.widgets.DateSlider.TimeObject#HOLIDAY}. See
+ * {@link Labeler#setHolidayProvider(HolidayProvider)}.
+ *
+ * Labelers ask about every day they label, possibly from several threads, so
+ * implementations should answer from a precomputed set rather than a Calendar.
+ */
+public interface HolidayProvider {
+    /**
+     * @param year The year
+     * @param month The zero-based month, as in Calendar
+     * @param dayOfMonth The day of the month, starting at 1
+     * @return true if the day is a holiday
+     */
+    public boolean isHoliday(int year, int month, int dayOfMonth);
+}
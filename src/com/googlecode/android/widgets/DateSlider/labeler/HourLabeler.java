@@ -1,27 +1,61 @@
 package com.googlecode.android.widgets.DateSlider.labeler;
 
-import java.util.Calendar;
-
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
 
 /**
  * A Labeler that displays hours
  */
 public class HourLabeler extends Labeler {
-    private final String mFormatString;
+    private final LabelFormat mFormat;
 
     public HourLabeler(String formatString) {
         super(90, 60);
-        mFormatString = formatString;
+        mFormat = LabelFormat.forFormat(formatString);
     }
 
     @Override
     public TimeObject add(long time, int val) {
-        return timeObjectfromCalendar(Util.addHours(time, val));
+        return getElem(Util.addHours(time, val));
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        getElem(Util.addHours(time, val), out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        Util.getHour(time, mFormat, out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        Util.fillHours(time, first, mFormat, out, off, count);
+    }
+
+    @Override
+    public boolean hasUnitIndex() {
+        return true;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        return Util.getUnitIndex(Util.HOURS, 1, time);
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        return Util.getUnitTime(Util.HOURS, 1, index);
+    }
+
+    @Override
+    protected long getUnitStart(long time) {
+        return Util.getHourStart(time);
     }
 
     @Override
-    protected TimeObject timeObjectfromCalendar(Calendar c) {
-        return Util.getHour(c, mFormatString);
+    protected TimeObject timeObjectfromTime(long time) {
+        return Util.getHour(time, mFormat);
     }
 }
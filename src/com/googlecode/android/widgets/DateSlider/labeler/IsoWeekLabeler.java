@@ -0,0 +1,14 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * A WeekLabeler that numbers weeks by ISO-8601, whatever the locale: weeks
+ * start on Monday, and week 1 is the one containing the first Thursday of
+ * the year.
+ */
+public class IsoWeekLabeler extends WeekLabeler {
+
+    public IsoWeekLabeler(String formatString) {
+        super(formatString);
+        setWeekRules(WeekRules.ISO);
+    }
+}
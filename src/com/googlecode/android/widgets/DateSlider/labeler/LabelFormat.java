@@ -0,0 +1,388 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+
+import com.googlecode.android.widgets.DateSlider.LabelText;
+
+/**
+ * A labelerFormat string, as passed to a labeler, that knows how to format
+ * times cheaply.
+ *
+ * Many format strings only depend on fields with a handful of possible
+ * values -- "%tM" on the minute, "%tR" on the hour and minute, "%td %ta" on
+ * the day of the month and the day of the week. For those, every label that
+ * has been formatted is kept in a table indexed by the field values, so once
+ * a label has been seen, labeling is an array lookup rather than a
+ * java.util.Formatter run. The table is rebuilt when the default locale
+ * changes. Other format strings are formatted through the {@link LabelStore}.
+ *
+ * The format string is also compiled into a {@link LabelProgram} when the
+ * LabelFormat is created. Labels are built by running the program rather than
+ * java.util.Formatter, and {@link #render(long, char[])} runs it straight into
+ * a caller's buffer, so a view can be relabeled without allocating. Format
+ * strings that can't be compiled fall back to Formatter.
+ *
+ * Labels are {@link LabelText}s, divided into parts by the first two spaces
+ * in the literal text of the format string, and
+ * {@link #render(long, char[], int[])} reports the ends of the parts, so a
+ * TimeLayoutView can show them on separate lines without looking for spaces
+ * in the label itself.
+ *
+ * Instances are shared by all labelers using the same format string; see
+ * {@link #forFormat(String)}.
+ */
+public final class LabelFormat {
+    /**
+     * The largest table that will be kept for a format string
+     */
+    private static final int MAX_TABLE_SIZE = 2048;
+
+    /**
+     * Stands in for the spaces that divide the parts of a label while it's
+     * formatted by {@link #formatParts(String, Object...)}
+     */
+    private static final char PART_MARK = '\uE000';
+
+    /*
+     * The fields that a format string can depend on and still be tabulated,
+     * in the order in which they make up the table index
+     */
+    private static final int HOUR = 1;
+    private static final int MINUTE = 1 << 1;
+    private static final int SECOND = 1 << 2;
+    private static final int DAY_OF_WEEK = 1 << 3;
+    private static final int MONTH = 1 << 4;
+    private static final int DAY_OF_MONTH = 1 << 5;
+    private static final int NOT_TABULAR = -1;
+
+    private static final HashMap<String, LabelFormat> sFormats = new HashMap<String, LabelFormat>();
+
+    private final String mFormatString;
+    /**
+     * The fields this format depends on, or NOT_TABULAR
+     */
+    private final int mFields;
+    private final int mTableSize;
+    /**
+     * The compiled format string, or null if it can't be compiled
+     */
+    private final LabelProgram mProgram;
+    private volatile Locale mTableLocale;
+    private volatile CharSequence[] mTable;
+
+    private LabelFormat(String formatString) {
+        mFormatString = formatString;
+        int fields = fieldsOf(formatString);
+        int size = 1;
+        if (fields != NOT_TABULAR) {
+            if ((fields & HOUR) != 0) size *= 24;
+            if ((fields & MINUTE) != 0) size *= 60;
+            if ((fields & SECOND) != 0) size *= 60;
+            if ((fields & DAY_OF_WEEK) != 0) size *= 7;
+            if ((fields & MONTH) != 0) size *= 12;
+            if ((fields & DAY_OF_MONTH) != 0) size *= 31;
+            if (size > MAX_TABLE_SIZE) {
+                fields = NOT_TABULAR;
+            }
+        }
+        mFields = fields;
+        mTableSize = size;
+        mProgram = LabelProgram.compile(formatString);
+    }
+
+    /**
+     * @param formatString A format string whose arguments are all the time to format
+     * @return The shared LabelFormat for the format string
+     */
+    public static LabelFormat forFormat(String formatString) {
+        synchronized (sFormats) {
+            LabelFormat f = sFormats.get(formatString);
+            if (f == null) {
+                f = new LabelFormat(formatString);
+                sFormats.put(formatString, f);
+            }
+            return f;
+        }
+    }
+
+    public String getFormatString() {
+        return mFormatString;
+    }
+
+    /**
+     * @return true if labels are looked up in a table indexed by field values
+     */
+    public boolean isTabular() {
+        return mFields != NOT_TABULAR;
+    }
+
+    /**
+     * @return true if the format string was compiled, so that
+     *         {@link #render(long, char[])} doesn't allocate
+     */
+    public boolean isCompiled() {
+        return mProgram != null;
+    }
+
+    /**
+     * Formats a time in the default time zone and locale.
+     *
+     * @param time The time
+     * @return The label
+     */
+    public CharSequence format(long time) {
+        return format(time, ZoneOffsets.getDefault());
+    }
+
+    /**
+     * Formats a time in the given time zone and the default locale. Labels in
+     * zones other than the default one are only looked up in the table; they
+     * aren't kept in the LabelStore, whose entries are per default time zone.
+     */
+    CharSequence format(long time, ZoneOffsets zone) {
+        if (mFields == NOT_TABULAR) {
+            if (zone != ZoneOffsets.getDefault()) {
+                return newLabel(time, zone);
+            }
+            CharSequence label = LabelStore.get(LabelFormat.class, mFormatString, time);
+            if (label == null) {
+                label = LabelStore.put(LabelFormat.class, mFormatString, time, newLabel(time, zone));
+            }
+            return label;
+        }
+        CharSequence[] table = mTable;
+        final Locale locale = Locale.getDefault();
+        if (table == null || !locale.equals(mTableLocale)) {
+            table = new CharSequence[mTableSize];
+            mTable = table;
+            mTableLocale = locale;
+        }
+        // the label only depends on the local fields, so the table serves all zones
+        final int index = indexOf(zone.toLocal(time));
+        CharSequence label = table[index];
+        if (label == null) {
+            // Strings are immutable, so other threads can safely read this
+            // slot without synchronization
+            label = newLabel(time, zone);
+            table[index] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Renders a time in the default time zone and locale into a buffer.
+     *
+     * @param time The time
+     * @param dest The buffer to render into
+     * @return The length of the label. If this is greater than the length of
+     *         dest, only part of the label was rendered, and it should be
+     *         rendered again into a buffer of at least that length.
+     */
+    public int render(long time, char[] dest) {
+        return render(time, ZoneOffsets.getDefault(), dest);
+    }
+
+    /**
+     * Renders a time in the given time zone and the default locale into a buffer.
+     *
+     * @see #render(long, char[])
+     */
+    int render(long time, ZoneOffsets zone, char[] dest) {
+        return render(time, zone, dest, null);
+    }
+
+    /**
+     * Renders a time in the default time zone and locale into a buffer, and
+     * reports where the parts of the label end.
+     *
+     * @param parts If not null, receives the ends of the primary and the
+     *        secondary part of the label, as {@link LabelText#getPrimaryEnd()}
+     *        and {@link LabelText#getSecondaryEnd()} would return them
+     * @see #render(long, char[])
+     */
+    public int render(long time, char[] dest, int[] parts) {
+        return render(time, ZoneOffsets.getDefault(), dest, parts);
+    }
+
+    int render(long time, ZoneOffsets zone, char[] dest, int[] parts) {
+        if (mProgram != null) {
+            return mProgram.render(time, zone, dest, parts);
+        }
+        final CharSequence label = format(time, zone);
+        final int length = label.length();
+        if (length <= dest.length) {
+            for (int i = 0; i < length; i++) {
+                dest[i] = label.charAt(i);
+            }
+        }
+        if (parts != null) {
+            parts[0] = LabelText.primaryEnd(label);
+            parts[1] = LabelText.secondaryEnd(label);
+        }
+        return length;
+    }
+
+    private LabelText newLabel(long time, ZoneOffsets zone) {
+        if (mProgram == null) {
+            if (zone == ZoneOffsets.getDefault()) {
+                return formatParts(mFormatString, time, time);
+            }
+            // Formatter formats longs in the default zone, but Calendars in their own
+            Calendar c = Calendar.getInstance(zone.getTimeZone());
+            c.setTimeInMillis(time);
+            return formatParts(mFormatString, c, c);
+        }
+        final int[] parts = new int[LabelProgram.MAX_PART_BREAKS];
+        char[] buf = new char[32];
+        int length = mProgram.render(time, zone, buf, parts);
+        if (length > buf.length) {
+            buf = new char[length];
+            mProgram.render(time, zone, buf, parts);
+        }
+        return new LabelText(new String(buf, 0, length), parts[0], parts[1]);
+    }
+
+    /**
+     * Formats the arguments with java.util.Formatter into a label whose parts
+     * are divided by the first two spaces in the literal text of the format
+     * string, like the labels of a LabelFormat. Labelers that format other
+     * arguments than a time use this to label their units.
+     *
+     * @param format A format string
+     * @param args The arguments of the format string
+     * @return The label
+     */
+    static LabelText formatParts(String format, Object... args) {
+        // mark the spaces that divide the parts with a private use character,
+        // so that they can be found again in the formatted text
+        StringBuilder marked = null;
+        int breaks = 0;
+        final int length = format.length();
+        for (int i = 0; i < length && breaks < LabelProgram.MAX_PART_BREAKS; i++) {
+            final char c = format.charAt(i);
+            if (c == '%') {
+                // skip the argument index, flags, width and precision
+                i++;
+                while (i < length && "0123456789$-#+ ,(<.".indexOf(format.charAt(i)) >= 0) {
+                    i++;
+                }
+                if (i < length && (format.charAt(i) == 't' || format.charAt(i) == 'T')) {
+                    i++;
+                }
+            } else if (c == ' ') {
+                if (marked == null) {
+                    marked = new StringBuilder(format);
+                }
+                marked.setCharAt(i, PART_MARK);
+                breaks++;
+            }
+        }
+        if (marked == null) {
+            final String text = String.format(format, args);
+            return new LabelText(text, text.length(), text.length());
+        }
+        final char[] text = String.format(marked.toString(), args).toCharArray();
+        final int[] parts = { text.length, text.length };
+        for (int i = 0, part = 0; i < text.length; i++) {
+            if (text[i] == PART_MARK && part < parts.length) {
+                text[i] = ' ';
+                parts[part++] = i;
+            }
+        }
+        return new LabelText(new String(text), parts[0], parts[1]);
+    }
+
+    /**
+     * @param local A local time
+     * @return The index into the table of the label for that time
+     */
+    private int indexOf(long local) {
+        final long days = CivilTime.floorDiv(local, CivilTime.DAY);
+        final int millis = (int)(local - days * CivilTime.DAY);
+        final int fields = mFields;
+        int index = 0;
+        if ((fields & HOUR) != 0) {
+            index = millis / (int)CivilTime.HOUR;
+        }
+        if ((fields & MINUTE) != 0) {
+            index = index * 60 + millis / (int)CivilTime.MINUTE % 60;
+        }
+        if ((fields & SECOND) != 0) {
+            index = index * 60 + millis / (int)CivilTime.SECOND % 60;
+        }
+        if ((fields & DAY_OF_WEEK) != 0) {
+            index = index * 7 + CivilTime.dayOfWeek(days) - 1;
+        }
+        if ((fields & (MONTH | DAY_OF_MONTH)) != 0) {
+            final int ymd = CivilTime.civilFromDays(days);
+            if ((fields & MONTH) != 0) {
+                index = index * 12 + CivilTime.month(ymd);
+            }
+            if ((fields & DAY_OF_MONTH) != 0) {
+                index = index * 31 + CivilTime.day(ymd) - 1;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Works out which fields a format string depends on.
+     *
+     * @return A mask of fields, or NOT_TABULAR if the format depends on something else
+     */
+    private static int fieldsOf(String format) {
+        int fields = 0;
+        final int length = format.length();
+        for (int i = 0; i < length; i++) {
+            if (format.charAt(i) != '%') {
+                continue;
+            }
+            // skip the argument index, flags, width and precision
+            i++;
+            while (i < length && "0123456789$-#+ ,(<.".indexOf(format.charAt(i)) >= 0) {
+                i++;
+            }
+            if (i >= length) {
+                return NOT_TABULAR;
+            }
+            char c = format.charAt(i);
+            if (c == '%' || c == 'n') {
+                continue;
+            }
+            if ((c != 't' && c != 'T') || ++i >= length) {
+                return NOT_TABULAR;
+            }
+            final int field = fieldOf(format.charAt(i));
+            if (field == NOT_TABULAR) {
+                return NOT_TABULAR;
+            }
+            fields |= field;
+        }
+        return fields;
+    }
+
+    private static int fieldOf(char conversion) {
+        switch (conversion) {
+        case 'H': case 'I': case 'k': case 'l': case 'p':
+            return HOUR;
+        case 'M':
+            return MINUTE;
+        case 'S':
+            return SECOND;
+        case 'R':
+            return HOUR | MINUTE;
+        case 'T': case 'r':
+            return HOUR | MINUTE | SECOND;
+        case 'a': case 'A':
+            return DAY_OF_WEEK;
+        case 'b': case 'B': case 'h': case 'm':
+            return MONTH;
+        case 'd': case 'e':
+            return DAY_OF_MONTH;
+        default:
+            return NOT_TABULAR;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
+
+/**
+ * Labels a run of units on a background thread ahead of the UI thread, so
+ * that a fling over many units doesn't label each of them within a frame.
+ *
+ * When a fling starts, ScrollLayout knows where the Scroller will stop, and
+ * so which units will scroll into view. It passes them to
+ * {@link #prefetch(long, int, int, boolean)} as offsets from the unit in the center
+ * view, and picks them up with {@link #get(long, int, MutableTimeObject)} as
+ * they're needed, falling back to labeling them itself if they aren't ready.
+ *
+ * The units are labeled in chunks, nearest first, into a buffer that belongs
+ * to the prefetch. After each chunk, the worker publishes the number of
+ * finished units through a volatile field, and never touches them again, so
+ * the UI thread reads them without locking. A new prefetch replaces the old
+ * one through an AtomicReference, and the old one stops after its current
+ * chunk.
+ *
+ * The buffers are reused: a prefetch takes a batch from a small pool that
+ * the worker is done with, so starting a fling doesn't allocate once the
+ * pool's buffers have grown to the length of the flings.
+ */
+public final class LabelPrefetcher {
+    /**
+     * The number of units labeled between publications
+     */
+    private static final int CHUNK = 8;
+    /**
+     * The most units that are prefetched for one fling
+     */
+    public static final int MAX_UNITS = 512;
+    /**
+     * The number of batches that are kept for reuse: the current one, one
+     * that the worker may still be finishing after it was replaced, and a
+     * free one
+     */
+    private static final int POOL_SIZE = 3;
+
+    private static ExecutorService sExecutor;
+
+    private final Labeler mLabeler;
+    private final AtomicReference<Batch> mCurrent = new AtomicReference<Batch>();
+    /**
+     * The batches for reuse, only accessed on the UI thread
+     */
+    private final Batch[] mPool = new Batch[POOL_SIZE];
+
+    /**
+     * A run of units, from offset first to first + count - 1 from the anchor
+     * unit, and how many of them are ready, counting from the end that is
+     * reached first. The UI thread only sets it up again once the worker is
+     * done with it.
+     */
+    private final class Batch implements Runnable {
+        long anchorTime;
+        int first, count;
+        boolean forward;
+        MutableTimeObject[] units = new MutableTimeObject[0];
+        volatile int ready;
+        volatile boolean cancelled;
+        /**
+         * Set from the prefetch until the worker has finished labeling
+         */
+        volatile boolean queued;
+
+        void reset(long anchorTime, int first, int count, boolean forward) {
+            this.anchorTime = anchorTime;
+            this.first = first;
+            this.count = count;
+            this.forward = forward;
+            if (units.length < count) {
+                final MutableTimeObject[] grown = new MutableTimeObject[count];
+                System.arraycopy(units, 0, grown, 0, units.length);
+                for (int i = units.length; i < count; i++) {
+                    grown[i] = new MutableTimeObject();
+                }
+                units = grown;
+            }
+            ready = 0;
+            cancelled = false;
+            queued = true;
+        }
+
+        public void run() {
+            try {
+                label(this);
+            } finally {
+                queued = false;
+            }
+        }
+    }
+
+    public LabelPrefetcher(Labeler labeler) {
+        mLabeler = labeler;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = BackgroundThreads.newSingleThreadExecutor("LabelPrefetcher", Thread.NORM_PRIORITY - 1);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Starts labeling a run of units in the background, replacing any
+     * prefetch in progress.
+     *
+     * @param anchorTime The start time of the unit the offsets are relative to
+     * @param first The offset of the first unit of the run
+     * @param count The number of units, at most {@link #MAX_UNITS}
+     * @param forward true if the units are reached in increasing order, so
+     *        that they're labeled from first upwards, false if from the last
+     *        one downwards
+     */
+    public void prefetch(long anchorTime, int first, int count, boolean forward) {
+        count = Math.min(count, MAX_UNITS);
+        if (count <= 0) {
+            cancel();
+            return;
+        }
+        final Batch batch = obtainBatch();
+        batch.reset(anchorTime, first, count, forward);
+        final Batch old = mCurrent.getAndSet(batch);
+        if (old != null) {
+            old.cancelled = true;
+        }
+        getExecutor().execute(batch);
+    }
+
+    /**
+     * @return A batch that is neither current nor being labeled, from the
+     *         pool if there is one
+     */
+    private Batch obtainBatch() {
+        final Batch current = mCurrent.get();
+        for (int i = 0; i < mPool.length; i++) {
+            Batch batch = mPool[i];
+            if (batch == null) {
+                batch = new Batch();
+                mPool[i] = batch;
+                return batch;
+            }
+            if (batch != current && !batch.queued) {
+                return batch;
+            }
+        }
+        // the worker is behind on several flings; this one isn't pooled
+        return new Batch();
+    }
+
+    /**
+     * Stops the prefetch in progress and forgets its units.
+     */
+    public void cancel() {
+        final Batch old = mCurrent.getAndSet(null);
+        if (old != null) {
+            old.cancelled = true;
+        }
+    }
+
+    /**
+     * Copies a prefetched unit, if it is ready.
+     *
+     * @param anchorTime The start time of the unit the offset is relative to
+     * @param offset The offset of the unit
+     * @param out Receives the unit
+     * @return true if the unit was ready, false if it must be labeled now
+     */
+    public boolean get(long anchorTime, int offset, MutableTimeObject out) {
+        final Batch batch = mCurrent.get();
+        if (batch == null || batch.anchorTime != anchorTime) {
+            return false;
+        }
+        final int i = offset - batch.first;
+        if (i < 0 || i >= batch.count) {
+            return false;
+        }
+        final int ready = batch.ready;
+        if (batch.forward ? i >= ready : i < batch.count - ready) {
+            return false;
+        }
+        out.set(batch.units[i]);
+        return true;
+    }
+
+    private void label(Batch batch) {
+        final Labeler labeler = mLabeler;
+        final MutableTimeObject[] units = batch.units;
+        final int count = batch.count;
+        int done = 0;
+        while (done < count && !batch.cancelled) {
+            final int n = Math.min(CHUNK, count - done);
+            // each chunk carries on from the last unit of the previous one,
+            // which is cheaper than stepping from the anchor for labelers
+            // that don't number their units
+            if (batch.forward) {
+                if (done == 0) {
+                    labeler.fill(batch.anchorTime, batch.first, units, 0, n);
+                } else {
+                    labeler.fill(units[done - 1].startTime, 1, units, done, n);
+                }
+                labeler.setFlags(units, done, n);
+            } else {
+                final int off = count - done - n;
+                if (done == 0) {
+                    labeler.fill(batch.anchorTime, batch.first + off, units, off, n);
+                } else {
+                    labeler.fill(units[off + n].startTime, -n, units, off, n);
+                }
+                labeler.setFlags(units, off, n);
+            }
+            done += n;
+            batch.ready = done;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * A format string compiled into a list of literal and field operations, which
+ * renders a time straight into a char array. It produces the same output as
+ * java.util.Formatter for the date/time conversions it supports, without
+ * parsing the format string, allocating a Calendar or building a String.
+ *
+ * Only %t/%T conversions without flags, width or precision are supported
+ * (argument indexes are ignored, since every argument is the same time), as
+ * well as %% and %n. {@link #compile(String)} returns null for anything else,
+ * and for conversions that depend on the time zone name or raw millis.
+ *
+ * The first two spaces in the literal text of the format string divide the
+ * label into its primary, secondary and tertiary parts (see
+ * {@link com.googlecode.android.widgets.DateSlider.LabelText}), and
+ * {@link #render(long, ZoneOffsets, char[], int[])} reports where they end.
+ * Spaces produced by conversions, such as those in %tr or in a localized
+ * month name, don't divide the label.
+ */
+final class LabelProgram {
+    /*
+     * Operation codes. The name codes (AM_PM to WEEKDAY_SHORT) may be or'ed
+     * with UPPER for the upper-case (%T) variant of the name.
+     */
+    private static final int LITERAL = 0;
+    private static final int HOUR_OF_DAY_2 = 1;   // H
+    private static final int HOUR_2 = 2;          // I
+    private static final int HOUR_OF_DAY = 3;     // k
+    private static final int HOUR = 4;            // l
+    private static final int MINUTE_2 = 5;        // M
+    private static final int SECOND_2 = 6;        // S
+    private static final int MILLISECOND_3 = 7;   // L
+    private static final int AM_PM = 8;           // p
+    private static final int MONTH_NAME = 9;      // B
+    private static final int MONTH_SHORT = 10;    // b, h
+    private static final int WEEKDAY_NAME = 11;   // A
+    private static final int WEEKDAY_SHORT = 12;  // a
+    private static final int CENTURY_2 = 13;      // C
+    private static final int YEAR_4 = 14;         // Y
+    private static final int YEAR_2 = 15;         // y
+    private static final int DAY_OF_YEAR_3 = 16;  // j
+    private static final int MONTH_2 = 17;        // m
+    private static final int DAY_2 = 18;          // d
+    private static final int DAY = 19;            // e
+    private static final int PART_BREAK = 20;     // a space between label parts
+    private static final int UPPER = 0x100;
+
+    /**
+     * The number of part breaks a label can have: between the primary and
+     * secondary parts, and between the secondary and tertiary parts
+     */
+    static final int MAX_PART_BREAKS = 2;
+
+    private final int[] mOps;
+    private final String[] mLiterals;
+    /**
+     * Whether any operation needs the civil date
+     */
+    private final boolean mNeedsDate;
+    private volatile Symbols mSymbols;
+
+    /**
+     * The locale-dependent strings and digits that operations render
+     */
+    private static final class Symbols {
+        final Locale locale;
+        final char zero;
+        final String[][] names = new String[(UPPER | WEEKDAY_SHORT) + 1][];
+
+        Symbols(Locale locale) {
+            this.locale = locale;
+            zero = new DecimalFormatSymbols(locale).getZeroDigit();
+            DateFormatSymbols dfs = new DateFormatSymbols(locale);
+            // like Formatter, only use localized am/pm markers outside the US
+            String[] ampm = Locale.US.equals(locale) ? new String[] { "AM", "PM" } : dfs.getAmPmStrings();
+            String[] lower = new String[ampm.length];
+            for (int i = 0; i < ampm.length; i++) {
+                lower[i] = ampm[i].toLowerCase(locale);
+            }
+            names[AM_PM] = lower;
+            names[MONTH_NAME] = dfs.getMonths();
+            names[MONTH_SHORT] = dfs.getShortMonths();
+            names[WEEKDAY_NAME] = dfs.getWeekdays();
+            names[WEEKDAY_SHORT] = dfs.getShortWeekdays();
+            for (int op = AM_PM; op <= WEEKDAY_SHORT; op++) {
+                String[] upper = new String[names[op].length];
+                for (int i = 0; i < upper.length; i++) {
+                    upper[i] = names[op][i].toUpperCase(locale);
+                }
+                names[op | UPPER] = upper;
+            }
+        }
+    }
+
+    private LabelProgram(int[] ops, String[] literals) {
+        mOps = ops;
+        mLiterals = literals;
+        boolean needsDate = false;
+        for (int op : ops) {
+            op &= ~UPPER;
+            needsDate |= op == MONTH_NAME || op == MONTH_SHORT || (op >= CENTURY_2 && op <= DAY);
+        }
+        mNeedsDate = needsDate;
+    }
+
+    /**
+     * @param format A format string whose arguments are all the time to format
+     * @return The compiled program, or null if the format string uses anything
+     *         that programs don't support
+     */
+    public static LabelProgram compile(String format) {
+        ArrayList<Integer> ops = new ArrayList<Integer>();
+        ArrayList<String> literals = new ArrayList<String>();
+        StringBuilder literal = new StringBuilder();
+        int breaks = 0;
+        final int length = format.length();
+        for (int i = 0; i < length; i++) {
+            char c = format.charAt(i);
+            if (c == ' ' && breaks < MAX_PART_BREAKS) {
+                flushLiteral(literal, ops, literals);
+                ops.add(PART_BREAK);
+                literals.add(null);
+                breaks++;
+                continue;
+            } else if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            // an argument index is fine, since every argument is the same
+            // time, but a width is not
+            i++;
+            final int digits = i;
+            while (i < length && Character.isDigit(format.charAt(i))) {
+                i++;
+            }
+            if (i < length && (format.charAt(i) == '$' || (i == digits && format.charAt(i) == '<'))) {
+                i++;
+            } else if (i > digits) {
+                return null;
+            }
+            if (i >= length) {
+                return null;
+            }
+            c = format.charAt(i);
+            if (c == '%') {
+                literal.append('%');
+                continue;
+            } else if (c == 'n') {
+                literal.append(System.getProperty("line.separator"));
+                continue;
+            } else if ((c != 't' && c != 'T') || ++i >= length) {
+                return null;
+            }
+            final int[] conversion = conversionOf(format.charAt(i));
+            if (conversion == null) {
+                return null;
+            }
+            for (int op : conversion) {
+                if (op < 0) {
+                    literal.append((char)-op);
+                    continue;
+                }
+                if (c == 'T' && op >= AM_PM && op <= WEEKDAY_SHORT) {
+                    op |= UPPER;
+                }
+                flushLiteral(literal, ops, literals);
+                ops.add(op);
+                literals.add(null);
+            }
+        }
+        flushLiteral(literal, ops, literals);
+        int[] opArray = new int[ops.size()];
+        for (int k = 0; k < opArray.length; k++) {
+            opArray[k] = ops.get(k);
+        }
+        return new LabelProgram(opArray, literals.toArray(new String[literals.size()]));
+    }
+
+    private static void flushLiteral(StringBuilder literal, ArrayList<Integer> ops,
+            ArrayList<String> literals) {
+        if (literal.length() > 0) {
+            ops.add(LITERAL);
+            literals.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * @return The operations a conversion expands to, with literal characters
+     *         as negated char values, or null if the conversion isn't supported
+     */
+    private static int[] conversionOf(char conversion) {
+        switch (conversion) {
+        case 'H': return new int[] { HOUR_OF_DAY_2 };
+        case 'I': return new int[] { HOUR_2 };
+        case 'k': return new int[] { HOUR_OF_DAY };
+        case 'l': return new int[] { HOUR };
+        case 'M': return new int[] { MINUTE_2 };
+        case 'S': return new int[] { SECOND_2 };
+        case 'L': return new int[] { MILLISECOND_3 };
+        case 'p': return new int[] { AM_PM };
+        case 'B': return new int[] { MONTH_NAME };
+        case 'b': case 'h': return new int[] { MONTH_SHORT };
+        case 'A': return new int[] { WEEKDAY_NAME };
+        case 'a': return new int[] { WEEKDAY_SHORT };
+        case 'C': return new int[] { CENTURY_2 };
+        case 'Y': return new int[] { YEAR_4 };
+        case 'y': return new int[] { YEAR_2 };
+        case 'j': return new int[] { DAY_OF_YEAR_3 };
+        case 'm': return new int[] { MONTH_2 };
+        case 'd': return new int[] { DAY_2 };
+        case 'e': return new int[] { DAY };
+        case 'R': return new int[] { HOUR_OF_DAY_2, -':', MINUTE_2 };
+        case 'T': return new int[] { HOUR_OF_DAY_2, -':', MINUTE_2, -':', SECOND_2 };
+        // Formatter always renders the marker of %tr in upper case
+        case 'r': return new int[] { HOUR_2, -':', MINUTE_2, -':', SECOND_2, -' ', AM_PM | UPPER };
+        case 'D': return new int[] { MONTH_2, -'/', DAY_2, -'/', YEAR_2 };
+        case 'F': return new int[] { YEAR_4, -'-', MONTH_2, -'-', DAY_2 };
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Renders a time in the default time zone and locale.
+     *
+     * @param time The time
+     * @param dest The buffer to render into
+     * @return The length of the label. If this is greater than the length of
+     *         dest, the label was truncated and should be rendered again into
+     *         a large enough buffer.
+     */
+    public int render(long time, char[] dest) {
+        return render(time, ZoneOffsets.getDefault(), dest);
+    }
+
+    /**
+     * Renders a time in the given time zone and the default locale.
+     *
+     * @see #render(long, char[])
+     */
+    public int render(long time, ZoneOffsets zone, char[] dest) {
+        return render(time, zone, dest, null);
+    }
+
+    /**
+     * Renders a time in the given time zone and the default locale, and
+     * reports where the parts of the label end.
+     *
+     * @param parts If not null, receives the ends of the primary and secondary
+     *        parts. A part that the format string doesn't have ends at the end
+     *        of the label.
+     * @see #render(long, char[])
+     */
+    public int render(long time, ZoneOffsets zone, char[] dest, int[] parts) {
+        Symbols symbols = mSymbols;
+        final Locale locale = Locale.getDefault();
+        if (symbols == null || !locale.equals(symbols.locale)) {
+            symbols = new Symbols(locale);
+            mSymbols = symbols;
+        }
+        final long local = zone.toLocal(time);
+        final long days = CivilTime.floorDiv(local, CivilTime.DAY);
+        final int millis = (int)(local - days * CivilTime.DAY);
+        final int hour = millis / (int)CivilTime.HOUR;
+        final int ymd = mNeedsDate ? CivilTime.civilFromDays(days) : 0;
+        final int year = CivilTime.year(ymd);
+        final char zero = symbols.zero;
+
+        int pos = 0;
+        int breaks = 0;
+        final int[] ops = mOps;
+        for (int k = 0; k < ops.length; k++) {
+            final int op = ops[k];
+            switch (op & ~UPPER) {
+            case LITERAL:
+                pos = putString(mLiterals[k], dest, pos);
+                break;
+            case HOUR_OF_DAY_2:
+                pos = putNumber(hour, 2, zero, dest, pos);
+                break;
+            case HOUR_2:
+                pos = putNumber(hour % 12 == 0 ? 12 : hour % 12, 2, zero, dest, pos);
+                break;
+            case HOUR_OF_DAY:
+                pos = putNumber(hour, 1, zero, dest, pos);
+                break;
+            case HOUR:
+                pos = putNumber(hour % 12 == 0 ? 12 : hour % 12, 1, zero, dest, pos);
+                break;
+            case MINUTE_2:
+                pos = putNumber(millis / (int)CivilTime.MINUTE % 60, 2, zero, dest, pos);
+                break;
+            case SECOND_2:
+                pos = putNumber(millis / (int)CivilTime.SECOND % 60, 2, zero, dest, pos);
+                break;
+            case MILLISECOND_3:
+                pos = putNumber(millis % 1000, 3, zero, dest, pos);
+                break;
+            case AM_PM:
+                pos = putString(symbols.names[op][hour < 12 ? Calendar.AM : Calendar.PM], dest, pos);
+                break;
+            case MONTH_NAME:
+            case MONTH_SHORT:
+                pos = putString(symbols.names[op][CivilTime.month(ymd)], dest, pos);
+                break;
+            case WEEKDAY_NAME:
+            case WEEKDAY_SHORT:
+                pos = putString(symbols.names[op][CivilTime.dayOfWeek(days)], dest, pos);
+                break;
+            case CENTURY_2:
+                pos = putNumber(year / 100, 2, zero, dest, pos);
+                break;
+            case YEAR_4:
+                pos = putNumber(year, 4, zero, dest, pos);
+                break;
+            case YEAR_2:
+                pos = putNumber(year % 100, 2, zero, dest, pos);
+                break;
+            case DAY_OF_YEAR_3:
+                final int dayOfYear = (int)(days - CivilTime.daysFromCivil(year, Calendar.JANUARY, 1)) + 1;
+                pos = putNumber(dayOfYear, 3, zero, dest, pos);
+                break;
+            case MONTH_2:
+                pos = putNumber(CivilTime.month(ymd) + 1, 2, zero, dest, pos);
+                break;
+            case DAY_2:
+                pos = putNumber(CivilTime.day(ymd), 2, zero, dest, pos);
+                break;
+            case DAY:
+                pos = putNumber(CivilTime.day(ymd), 1, zero, dest, pos);
+                break;
+            case PART_BREAK:
+                if (parts != null) {
+                    parts[breaks++] = pos;
+                }
+                if (pos < dest.length) {
+                    dest[pos] = ' ';
+                }
+                pos++;
+                break;
+            }
+        }
+        if (parts != null) {
+            for (; breaks < MAX_PART_BREAKS; breaks++) {
+                parts[breaks] = pos;
+            }
+        }
+        return pos;
+    }
+
+    private static int putString(String s, char[] dest, int pos) {
+        final int length = s.length();
+        if (pos + length <= dest.length) {
+            s.getChars(0, length, dest, pos);
+        }
+        return pos + length;
+    }
+
+    /**
+     * Writes a non-negative number, zero-padded to at least the given number of digits.
+     */
+    private static int putNumber(int value, int digits, char zero, char[] dest, int pos) {
+        int n = 1;
+        for (int v = value / 10; v > 0; v /= 10) {
+            n++;
+        }
+        n = Math.max(n, digits);
+        final int end = pos + n;
+        if (end <= dest.length) {
+            for (int i = end - 1; i >= pos; i--) {
+                dest[i] = (char)(zero + value % 10);
+                value /= 10;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,177 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * A process-wide store of formatted labels, shared by all labelers in all
+ * ScrollLayouts. When several pickers are alive at once, each label is
+ * formatted once and every picker gets the same immutable String.
+ *
+ * Labels are keyed by the labeler class that produced them, the format
+ * string, the default locale and time zone, and the start time of the unit.
+ * The labels produced by {@link LabelFormat} are a function of the format
+ * string and time alone, so they are all stored under LabelFormat's key,
+ * whichever labeler asked for them.
+ *
+ * The store is bounded by an estimate of the memory its entries use, and
+ * evicts the least recently used labels when it grows past that. All
+ * methods are synchronized, so labels can be produced off the UI thread.
+ *
+ * With a {@link DiskLabelStore} (see {@link #setDiskStore(DiskLabelStore)}),
+ * labels that aren't in memory are looked up on disk before the labeler
+ * formats them, and the labels it formats are written to disk for the next
+ * run of the app.
+ */
+public final class LabelStore {
+    /**
+     * The estimated memory used by an entry besides the label's characters
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final LinkedHashMap<Key, CharSequence> sLabels =
+        new LinkedHashMap<Key, CharSequence>(256, 0.75f, true);
+    /**
+     * The key used for lookups, so that finding a label doesn't allocate
+     */
+    private static final Key sProbe = new Key();
+    private static int sMaxSize = 256 * 1024;
+    private static int sSize;
+    private static DiskLabelStore sDisk;
+
+    private static final class Key {
+        Class<?> owner;
+        String format;
+        Locale locale;
+        ZoneOffsets zone;
+        long start;
+        int hash;
+
+        Key set(Class<?> owner, String format, long start) {
+            this.owner = owner;
+            this.format = format;
+            this.locale = Locale.getDefault();
+            this.zone = ZoneOffsets.getDefault();
+            this.start = start;
+            int h = owner.hashCode();
+            h = h * 31 + format.hashCode();
+            h = h * 31 + locale.hashCode();
+            h = h * 31 + zone.hashCode();
+            hash = h * 31 + (int)(start ^ (start >>> 32));
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            // zones are shared instances, see ZoneOffsets.forZone()
+            return start == k.start && owner == k.owner && zone == k.zone
+                    && format.equals(k.format) && locale.equals(k.locale);
+        }
+    }
+
+    private LabelStore() {
+    }
+
+    /**
+     * @param owner The labeler class that formats the label
+     * @param format The format string
+     * @param start The start time of the unit
+     * @return The stored label, or null if it hasn't been stored (or was evicted)
+     */
+    public static synchronized CharSequence get(Class<?> owner, String format, long start) {
+        CharSequence label = sLabels.get(sProbe.set(owner, format, start));
+        if (label == null && sDisk != null) {
+            label = sDisk.get(owner, format, start);
+            if (label != null) {
+                store(owner, format, start, label);
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Stores a label. If an equal key was stored in the meantime (e.g. by another
+     * thread), the existing label is kept and returned instead, so callers should
+     * always use the returned label.
+     *
+     * @param owner The labeler class that formatted the label
+     * @param format The format string
+     * @param start The start time of the unit
+     * @param label The formatted label; it must be immutable
+     * @return The shared label
+     */
+    public static synchronized CharSequence put(Class<?> owner, String format, long start,
+            CharSequence label) {
+        CharSequence existing = sLabels.get(sProbe.set(owner, format, start));
+        if (existing != null) {
+            return existing;
+        }
+        store(owner, format, start, label);
+        if (sDisk != null) {
+            sDisk.record(owner, format, start, label);
+        }
+        return label;
+    }
+
+    private static void store(Class<?> owner, String format, long start, CharSequence label) {
+        sLabels.put(new Key().set(owner, format, start), label);
+        sSize += sizeOf(label);
+        trim();
+    }
+
+    /**
+     * Sets the on-disk tier of the store.
+     *
+     * @param disk The disk store, or null for none
+     */
+    public static synchronized void setDiskStore(DiskLabelStore disk) {
+        sDisk = disk;
+    }
+
+    public static synchronized DiskLabelStore getDiskStore() {
+        return sDisk;
+    }
+
+    /**
+     * Sets the approximate amount of memory that stored labels may use.
+     *
+     * @param bytes The limit, in bytes
+     */
+    public static synchronized void setMaxSize(int bytes) {
+        sMaxSize = bytes;
+        trim();
+    }
+
+    public static synchronized void clear() {
+        sLabels.clear();
+        sSize = 0;
+    }
+
+    private static int sizeOf(CharSequence label) {
+        return ENTRY_OVERHEAD + label.length() * 2;
+    }
+
+    /**
+     * Evicts the least recently used labels until the store is within its limit.
+     */
+    private static void trim() {
+        if (sSize <= sMaxSize) {
+            return;
+        }
+        Iterator<CharSequence> it = sLabels.values().iterator();
+        while (sSize > sMaxSize && it.hasNext()) {
+            sSize -= sizeOf(it.next());
+            it.remove();
+        }
+    }
+}
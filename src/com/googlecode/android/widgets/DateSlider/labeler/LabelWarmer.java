@@ -0,0 +1,230 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
+
+/**
+ * Labels and flags the units of a range of times ahead of time, on
+ * background threads, so that the first fling over the units the user will
+ * probably browse finds the shared state it needs already built: the
+ * offset tables of the time zone (see {@link ZoneOffsets}), the labels of
+ * formats that aren't compiled in the {@link LabelStore} or the table of
+ * their {@link LabelFormat}, and whatever the labeler's
+ * {@link HolidayProvider} and {@link Availability} look up for the flags.
+ * See {@link com.googlecode.android.widgets.DateSlider.SliderContainer#warmUp(long, long)}.
+ *
+ * Units are labeled through {@link Labeler#fill(long, int, MutableTimeObject[], int, int)}
+ * into scratch objects and flagged with
+ * {@link Labeler#setFlags(MutableTimeObject[], int, int)}, as ScrollLayout
+ * does, so the labelers' TimeObject caches are left alone. A compiled
+ * format renders straight into the views and stores nothing, so only the
+ * zone tables and flags of its units are warmed.
+ *
+ * The range of each labeler is split into chunks of units, which run on a
+ * shared pool with a thread per spare processor. The LabelStore evicts the
+ * least recently used labels, so the work runs furthest from the initial
+ * time first, and the units nearest to it are stored last. Labelers that
+ * number their units are split by unit index, so their chunks run in
+ * parallel; the others are stepped outwards from the initial time, one task
+ * per direction, and labeled on the way back.
+ */
+public final class LabelWarmer {
+    /**
+     * The most units that are warmed up per labeler and direction
+     */
+    public static final int MAX_UNITS = 16384;
+    /**
+     * The number of units labeled by one task
+     */
+    private static final int CHUNK = 256;
+
+    private static ExecutorService sExecutor;
+
+    private volatile boolean mCancelled;
+    private final AtomicInteger mRemaining = new AtomicInteger();
+
+    private LabelWarmer() {
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            sExecutor = BackgroundThreads.newFixedThreadPool("LabelWarmer", threads, Thread.MIN_PRIORITY);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Starts labeling the units from one time to another.
+     *
+     * @param labelers The labelers whose units to label
+     * @param time The initial time, whose units are labeled first
+     * @param from The start of the range
+     * @param to The end of the range
+     * @return The warm-up, which can be cancelled
+     */
+    public static LabelWarmer start(Labeler[] labelers, long time, long from, long to) {
+        final LabelWarmer warmer = new LabelWarmer();
+        final ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+        for (Labeler labeler : labelers) {
+            if (labeler.hasUnitIndex()) {
+                final long anchor = labeler.getUnitIndex(time);
+                final long first = Math.max(labeler.getUnitIndex(from), anchor - MAX_UNITS);
+                final long last = Math.min(labeler.getUnitIndex(to), anchor + MAX_UNITS);
+                for (long i = first; i <= last; i += CHUNK) {
+                    chunks.add(new Chunk(labeler, i, Math.min(i + CHUNK - 1, last), anchor));
+                }
+            } else {
+                chunks.add(new Chunk(labeler, time, to, true));
+                chunks.add(new Chunk(labeler, time, from, false));
+            }
+        }
+        // furthest first, so that the nearest labels are the most recently used
+        Collections.sort(chunks, new Comparator<Chunk>() {
+            public int compare(Chunk a, Chunk b) {
+                return a.distance > b.distance ? -1 : a.distance < b.distance ? 1 : 0;
+            }
+        });
+        warmer.mRemaining.set(chunks.size());
+        final ExecutorService executor = getExecutor();
+        for (final Chunk chunk : chunks) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (!warmer.mCancelled) {
+                            chunk.label(warmer);
+                        }
+                    } finally {
+                        warmer.mRemaining.decrementAndGet();
+                    }
+                }
+            });
+        }
+        return warmer;
+    }
+
+    /**
+     * Flags the unit that was filled into scratch[0], and stores its label. A
+     * label given as text was stored by the labeler while filling it in.
+     */
+    private static void warm(Labeler labeler, MutableTimeObject[] scratch) {
+        labeler.setFlags(scratch, 0, 1);
+        final MutableTimeObject to = scratch[0];
+        if (to.format != null && !to.format.isCompiled()) {
+            to.format.format(to.startTime);
+        }
+    }
+
+    /**
+     * Stops the warm-up after the chunks that are running.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * @return true if every chunk has been labeled or cancelled
+     */
+    public boolean isDone() {
+        return mRemaining.get() == 0;
+    }
+
+    /**
+     * A run of units of one labeler: by index, or from a time outwards
+     */
+    private static final class Chunk {
+        final Labeler labeler;
+        final boolean indexed, forward;
+        final long first, last;
+        final long anchor;
+        final long distance;
+
+        Chunk(Labeler labeler, long first, long last, long anchor) {
+            this.labeler = labeler;
+            this.indexed = true;
+            this.forward = true;
+            this.first = first;
+            this.last = last;
+            this.anchor = anchor;
+            distance = first > anchor ? first - anchor : last < anchor ? anchor - last : 0;
+        }
+
+        Chunk(Labeler labeler, long time, long limit, boolean forward) {
+            this.labeler = labeler;
+            this.indexed = false;
+            this.forward = forward;
+            this.first = time;
+            this.last = limit;
+            this.anchor = 0;
+            // the units are only known once stepped through, so start early
+            distance = Long.MAX_VALUE;
+        }
+
+        void label(LabelWarmer warmer) {
+            if (indexed) {
+                labelIndexes(warmer);
+            } else {
+                labelOutwards(warmer);
+            }
+        }
+
+        /**
+         * Labels the indexes from both ends of the chunk inwards, whichever
+         * is further from the anchor first.
+         */
+        private void labelIndexes(LabelWarmer warmer) {
+            final MutableTimeObject[] scratch = { new MutableTimeObject() };
+            long lo = first, hi = last;
+            while (lo <= hi && !warmer.mCancelled) {
+                final long i;
+                if (anchor - lo >= hi - anchor) {
+                    i = lo++;
+                } else {
+                    i = hi--;
+                }
+                labeler.fill(labeler.getUnitTime(i), 0, scratch, 0, 1);
+                warm(labeler, scratch);
+            }
+        }
+
+        /**
+         * Steps outwards from the initial time to the limit, then labels the
+         * units on the way back, so the nearest are labeled last.
+         */
+        private void labelOutwards(LabelWarmer warmer) {
+            final MutableTimeObject[] scratch = new MutableTimeObject[CHUNK];
+            for (int k = 0; k < CHUNK; k++) {
+                scratch[k] = new MutableTimeObject();
+            }
+            final long[] starts = new long[MAX_UNITS];
+            int count = 0;
+            long time = first;
+            while (count < MAX_UNITS && !warmer.mCancelled) {
+                // the forward task also labels the unit containing the initial time
+                labeler.fill(time, forward ? (count == 0 ? 0 : 1) : -CHUNK, scratch, 0, CHUNK);
+                boolean done = false;
+                for (int k = 0; k < CHUNK && count < MAX_UNITS; k++) {
+                    final MutableTimeObject to = scratch[forward ? k : CHUNK - 1 - k];
+                    if (forward ? to.startTime > last : to.endTime < last) {
+                        done = true;
+                        break;
+                    }
+                    starts[count++] = to.startTime;
+                }
+                if (done) {
+                    break;
+                }
+                time = starts[count - 1];
+            }
+            for (int n = count - 1; n >= 0 && !warmer.mCancelled; n--) {
+                labeler.fill(starts[n], 0, scratch, 0, 1);
+                warm(labeler, scratch);
+            }
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.googlecode.android.widgets.DateSlider.labeler;
 
 import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
 
 import android.content.Context;
 
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
+import com.googlecode.android.widgets.DateSlider.timeview.EnrichableTimeView;
+import com.googlecode.android.widgets.DateSlider.timeview.TimeLayoutView;
 import com.googlecode.android.widgets.DateSlider.timeview.TimeTextView;
 import com.googlecode.android.widgets.DateSlider.timeview.TimeView;
 
@@ -12,6 +18,16 @@ import com.googlecode.android.widgets.DateSlider.timeview.TimeView;
  * This is an abstract class whose job is create TimeViews that can be used
  * to populate a ScrollLayout, and to generate TimeObjects from times that
  * can be used to populate the TimeViews.
+ *
+ * The labeler also works out the flags of each unit (see
+ * {@link TimeObject#flags}): whether it's on the weekend, today, a holiday or
+ * outside of the selectable range. They're computed with day arithmetic when
+ * the unit is labeled, so the views style themselves without a Calendar.
+ *
+ * Labeling must be thread-safe: ScrollLayout labels the units a fling is
+ * going to reach on a background thread (see {@link LabelPrefetcher}) while
+ * the UI thread goes on labeling. The built-in labelers only share immutable
+ * or synchronized state between calls.
  */
 public abstract class Labeler {
     /**
@@ -23,7 +39,39 @@ public abstract class Labeler {
      */
     private final int viewHeightDP;
     
-    protected int minuteInterval=1;
+    protected volatile int minuteInterval=1;
+    /**
+     * The cache of TimeObjects by unit start time, or null if caching is disabled
+     */
+    private volatile LongCache<TimeObject> mCache;
+    /**
+     * The label of each unit's start time in a second time zone, or null
+     */
+    private ZoneLabel mSecondaryLabel;
+    private HolidayProvider mHolidays;
+    /**
+     * The range of selectable times, -1 meaning unbounded as in ScrollLayout
+     */
+    private volatile long mMinTime = -1, mMaxTime = -1;
+    /**
+     * The indexes of the units that can't be selected, or null
+     */
+    private volatile UnitSet mDisabled;
+    /**
+     * The rule for the times that can be selected, or null
+     */
+    private volatile Availability mAvailability;
+    private volatile Locale mWeekendLocale;
+    private volatile int mWeekendDays;
+    /**
+     * The cached TimeObjects were flagged with TODAY according to the time
+     * they were created, which holds until this time
+     */
+    private volatile long mTodayValidUntil = Long.MAX_VALUE;
+    /**
+     * Loads the enrichments of the visible units, or null
+     */
+    private EnrichmentLoader mEnrichments;
 
     /**
      * @param viewWidthDB The default width of views labeled by this labeler in dp
@@ -32,6 +80,8 @@ public abstract class Labeler {
     public Labeler(int viewWidthDP, int viewHeightDP) {
         this.viewWidthDP = viewWidthDP;
         this.viewHeightDP = viewHeightDP;
+        // pick up any change of the default time zone since the last labeler was created
+        ZoneOffsets.refreshDefault();
     }
 
     /**
@@ -42,9 +92,221 @@ public abstract class Labeler {
      * returned from {@link #createView(Context, boolean)}
      */
     public TimeObject getElem(long time) {
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(time);
-        return timeObjectfromCalendar(c);
+        final LongCache<TimeObject> cache = mCache;
+        if (cache == null) {
+            return withFlags(timeObjectfromTime(time));
+        }
+        if (System.currentTimeMillis() > mTodayValidUntil) {
+            mTodayValidUntil = Long.MAX_VALUE;
+            cache.clear();
+        }
+        final long start = getUnitStart(time);
+        TimeObject to = cache.get(start);
+        if (to == null) {
+            to = withFlags(timeObjectfromTime(start));
+            cache.put(start, to);
+        }
+        return to;
+    }
+
+    private TimeObject withFlags(TimeObject to) {
+        final int flags = getFlags(to.startTime, to.endTime);
+        if (flags == to.flags) {
+            return to;
+        }
+        return new TimeObject(to.text, to.primaryEnd, to.secondaryEnd, to.startTime, to.endTime, flags);
+    }
+
+    /**
+     * Works out the flags of a unit, as in {@link TimeObject#flags}:
+     * {@link TimeObject#WEEKEND} if every day of the unit is a weekend day
+     * in the default locale, {@link TimeObject#TODAY} if it contains the
+     * current time, {@link TimeObject#HOLIDAY} if it lies within a single day
+     * that the HolidayProvider calls a holiday, and
+     * {@link TimeObject#OUT_OF_RANGE} if it lies outside of the range set by
+     * {@link #setTimeRange(long, long)}, and {@link TimeObject#DISABLED} if
+     * it is one of the units set by {@link #setDisabledUnits(UnitSet)} or
+     * contains no time available under the rule set by
+     * {@link #setAvailability(Availability)}.
+     *
+     * @param startTime The start time of the unit
+     * @param endTime The end time of the unit
+     * @return The flags of the unit
+     */
+    public int getFlags(long startTime, long endTime) {
+        int flags = 0;
+        final long now = System.currentTimeMillis();
+        if (now < startTime) {
+            // the unit becomes the current one at its start
+            if (startTime - 1 < mTodayValidUntil) {
+                mTodayValidUntil = startTime - 1;
+            }
+        } else if (now <= endTime) {
+            flags |= TimeObject.TODAY;
+            if (endTime < mTodayValidUntil) {
+                mTodayValidUntil = endTime;
+            }
+        }
+        final long minTime = mMinTime, maxTime = mMaxTime;
+        if (hasUnitIndex()) {
+            // compare unit indexes, so that the unit containing a limit is
+            // in range however the limit falls within it
+            final long index = getUnitIndex(startTime);
+            if ((minTime != -1 && index < getUnitIndex(minTime))
+                    || (maxTime != -1 && index > getUnitIndex(maxTime))) {
+                flags |= TimeObject.OUT_OF_RANGE;
+            }
+        } else if ((minTime != -1 && endTime < minTime) || (maxTime != -1 && startTime > maxTime)) {
+            flags |= TimeObject.OUT_OF_RANGE;
+        }
+        final UnitSet disabled = mDisabled;
+        final Availability availability = mAvailability;
+        if ((disabled != null && disabled.contains(getUnitIndex(startTime)))
+                || (availability != null && !availability.isAvailable(startTime, endTime))) {
+            flags |= TimeObject.DISABLED;
+        }
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long startDay = CivilTime.floorDiv(z.toLocal(startTime), CivilTime.DAY);
+        final long endDay = CivilTime.floorDiv(z.toLocal(endTime), CivilTime.DAY);
+        if (endDay - startDay < 7) {
+            final int weekend = getWeekendDays();
+            boolean allWeekend = true;
+            for (long day = startDay; day <= endDay && allWeekend; day++) {
+                allWeekend = (weekend & WeekendDays.bit(CivilTime.dayOfWeek(day))) != 0;
+            }
+            if (allWeekend) {
+                flags |= TimeObject.WEEKEND;
+            }
+        }
+        final HolidayProvider holidays = mHolidays;
+        if (holidays != null && startDay == endDay) {
+            final int ymd = CivilTime.civilFromDays(startDay);
+            if (holidays.isHoliday(CivilTime.year(ymd), CivilTime.month(ymd), CivilTime.day(ymd))) {
+                flags |= TimeObject.HOLIDAY;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Sets the flags of labeled units, as {@link #getFlags(long, long)} works
+     * them out. ScrollLayout calls this on the objects filled by
+     * {@link #fill(long, int, MutableTimeObject[], int, int)} and
+     * {@link #add(long, int, MutableTimeObject)}.
+     *
+     * @param out The objects to flag
+     * @param off The index of the first object to flag
+     * @param count The number of objects to flag
+     */
+    public void setFlags(MutableTimeObject[] out, int off, int count) {
+        for (int i = off; i < off + count; i++) {
+            out[i].flags = getFlags(out[i].startTime, out[i].endTime);
+        }
+    }
+
+    private int getWeekendDays() {
+        final Locale locale = Locale.getDefault();
+        if (!locale.equals(mWeekendLocale)) {
+            if (mWeekendLocale != null) {
+                // the cached TimeObjects were flagged with the old weekend
+                clearCache();
+            }
+            mWeekendDays = WeekendDays.forLocale(locale);
+            mWeekendLocale = locale;
+        }
+        return mWeekendDays;
+    }
+
+    /**
+     * Sets the source of the holidays that are flagged with
+     * {@link TimeObject#HOLIDAY}.
+     *
+     * @param holidays The provider, or null to flag no holidays
+     */
+    public void setHolidayProvider(HolidayProvider holidays) {
+        if (holidays != mHolidays) {
+            mHolidays = holidays;
+            clearCache();
+        }
+    }
+
+    public HolidayProvider getHolidayProvider() {
+        return mHolidays;
+    }
+
+    /**
+     * Sets the range of times that can be selected. Units outside of it are
+     * flagged with {@link TimeObject#OUT_OF_RANGE}.
+     *
+     * @param minTime The earliest time, or -1 for none
+     * @param maxTime The latest time, or -1 for none
+     */
+    public void setTimeRange(long minTime, long maxTime) {
+        if (minTime != mMinTime || maxTime != mMaxTime) {
+            mMinTime = minTime;
+            mMaxTime = maxTime;
+            clearCache();
+        }
+    }
+
+    /**
+     * Sets the units that can't be selected, by their unit indexes. They are
+     * flagged with {@link TimeObject#DISABLED}. The labeler keeps a copy of
+     * the set, so changes to it only take effect when it is set again.
+     *
+     * @param units The disabled units, or null for none
+     * @throws UnsupportedOperationException if the labeler doesn't number its
+     *         units, see {@link #hasUnitIndex()}
+     */
+    public void setDisabledUnits(UnitSet units) {
+        if (units != null && !hasUnitIndex()) {
+            throw new UnsupportedOperationException(getClass().getSimpleName()
+                    + " doesn't number its units");
+        }
+        mDisabled = units == null || units.isEmpty() ? null : new UnitSet(units);
+        clearCache();
+    }
+
+    /**
+     * @return The disabled units, or null if there are none. The set must not
+     *         be changed.
+     */
+    public UnitSet getDisabledUnits() {
+        return mDisabled;
+    }
+
+    /**
+     * Sets the rule for the times that can be selected. Units that contain no
+     * available time are flagged with {@link TimeObject#DISABLED}. The
+     * labeler keeps a copy of the rule, so changes to it only take effect
+     * when it is set again.
+     *
+     * @param availability The rule, or null if every time is available
+     */
+    public void setAvailability(Availability availability) {
+        mAvailability = availability == null ? null : new Availability(availability);
+        clearCache();
+    }
+
+    /**
+     * @return The rule for the times that can be selected, or null. The rule
+     *         must not be changed.
+     */
+    public Availability getAvailability() {
+        return mAvailability;
+    }
+
+    /**
+     * Returns the start time of the unit containing the time, i.e. the startTime
+     * of the TimeObject that {@link #getElem(long)} returns. This is used as the
+     * cache key, so labelers that enable caching should override it with something
+     * cheaper than the default, which builds the TimeObject.
+     *
+     * @param time The time
+     * @return The start time of the unit containing it
+     */
+    protected long getUnitStart(long time) {
+        return timeObjectfromTime(time).startTime;
     }
 
     /**
@@ -56,9 +318,68 @@ public abstract class Labeler {
      * @return The new unpopulated TimeView object
      */
     public TimeView createView(Context context, boolean isCenterView) {
+        if (mSecondaryLabel != null) {
+            // the secondary label goes in the bottom row
+            return new TimeLayoutView(context, isCenterView, 25, 12, 0.8f);
+        }
         return new TimeTextView(context, isCenterView, 25);
     }
 
+    /**
+     * Adds a label in a second time zone to every unit, such as the customer's
+     * local time next to one's own. ScrollLayout shows it in the bottom row of
+     * TimeLayoutViews, beneath the whole of the primary label; other views
+     * ignore it. It must be set before the ScrollLayout creates its views.
+     *
+     * @param formatString The format string of the secondary label, applied to
+     *        the start time of each unit
+     * @param zone The time zone of the secondary label, or null to remove it
+     */
+    public void setSecondaryLabel(String formatString, TimeZone zone) {
+        mSecondaryLabel = zone == null ? null : new ZoneLabel(formatString, zone);
+    }
+
+    /**
+     * @return The secondary label, or null if there is none
+     */
+    public ZoneLabel getSecondaryLabel() {
+        return mSecondaryLabel;
+    }
+
+    /**
+     * Adds data-backed enrichments to the units, loaded on a shared
+     * background thread. See {@link #setEnricher(Enricher, Executor)}.
+     */
+    public void setEnricher(Enricher enricher) {
+        setEnricher(enricher, null);
+    }
+
+    /**
+     * Adds data-backed enrichments to the units, such as the number of
+     * bookings on each day. The labels stay synchronous; ScrollLayout asks
+     * the {@link EnrichmentLoader} for the enrichments of the visible units,
+     * shows the Enricher's placeholder in their TimeViews, and passes each
+     * enrichment to {@link EnrichableTimeView#setEnrichment(CharSequence)} when it has
+     * been loaded. It must be set before the ScrollLayout creates its views.
+     *
+     * @param enricher The enricher, or null to remove it
+     * @param executor The executor to run it on, or null for a shared
+     *        background thread
+     */
+    public void setEnricher(Enricher enricher, Executor executor) {
+        if (mEnrichments != null) {
+            mEnrichments.cancelAll();
+        }
+        mEnrichments = enricher == null ? null : new EnrichmentLoader(enricher, executor, 256);
+    }
+
+    /**
+     * @return The loader of the enrichments, or null if there is no Enricher
+     */
+    public EnrichmentLoader getEnrichmentLoader() {
+        return mEnrichments;
+    }
+
     /**
      * This method adds "val" time units (where a time unit is the amount of time that
      * separates one TimeView generated by this labeler from the next -- e.g. if this
@@ -67,21 +388,153 @@ public abstract class Labeler {
      * the result.
      *
      * This method will be called constantly, whenever new date information is required.
+     * Implementations should return {@link #getElem(long)} of the shifted time so
+     * that the result is served from the cache when it is enabled.
      *
      * @param time The time
      * @param val The number of units to add to the time
      * @return The resulting TimeObject
      */
     public abstract TimeObject add(long time, int val);
+
+    /**
+     * Like {@link #getElem(long)}, but fills a caller-supplied MutableTimeObject
+     * rather than returning a TimeObject. ScrollLayout uses this and
+     * {@link #add(long, int, MutableTimeObject)} to relabel its views while
+     * scrolling, so they should not allocate.
+     *
+     * The default implementation copies the result of {@link #getElem(long)},
+     * which doesn't allocate when it is served from the cache. The built-in
+     * labelers fill the object directly.
+     *
+     * @param time The time to display
+     * @param out The object to fill
+     */
+    public void getElem(long time, MutableTimeObject out) {
+        out.set(getElem(time));
+    }
+
+    /**
+     * Like {@link #add(long, int)}, but fills a caller-supplied MutableTimeObject
+     * rather than returning a TimeObject. See {@link #getElem(long, MutableTimeObject)}.
+     *
+     * @param time The time
+     * @param val The number of units to add to the time
+     * @param out The object to fill
+     */
+    public void add(long time, int val, MutableTimeObject out) {
+        out.set(add(time, val));
+    }
+
+    /**
+     * Fills a run of consecutive units in one go: out[off + k] is set to the
+     * unit that is first + k units away from the unit containing time. This is
+     * how ScrollLayout labels a whole window of views at once.
+     *
+     * The default implementation starts from {@link #getElem(long, MutableTimeObject)}
+     * and steps one unit at a time with add(endTime, +/-1, out), like the
+     * ScrollLayout used to do view by view. The built-in labelers override it
+     * to step through their field values directly.
+     *
+     * @param time A time in the anchor unit
+     * @param first The offset in units of out[off] from the anchor unit
+     * @param out The objects to fill
+     * @param off The index of the first object to fill
+     * @param count The number of objects to fill
+     */
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        if (count <= 0) {
+            return;
+        }
+        // if the anchor unit falls outside of the run, step to the nearest
+        // end of the run using the first or last slot as scratch space
+        int anchor = off - first;
+        if (anchor < off) {
+            getElem(time, out[off]);
+            for (; anchor < off; anchor++) {
+                add(out[off].endTime, 1, out[off]);
+            }
+        } else if (anchor >= off + count) {
+            final int last = off + count - 1;
+            getElem(time, out[last]);
+            for (; anchor > last; anchor--) {
+                add(out[last].endTime, -1, out[last]);
+            }
+        } else {
+            getElem(time, out[anchor]);
+        }
+        for (int i = anchor + 1; i < off + count; i++) {
+            add(out[i - 1].endTime, 1, out[i]);
+        }
+        for (int i = anchor - 1; i >= off; i--) {
+            add(out[i + 1].endTime, -1, out[i]);
+        }
+    }
+
+    /**
+     * Labelers whose units can be numbered consecutively -- months since the
+     * epoch, say -- return true here and implement {@link #getUnitIndex(long)}
+     * and {@link #getUnitTime(long)}. ScrollLayout then works out how far to
+     * jump with integer arithmetic instead of estimating it from unit lengths.
+     *
+     * @return true if this labeler numbers its units
+     */
+    public boolean hasUnitIndex() {
+        return false;
+    }
+
     /**
-     * This method converts from a calendar to a TimeObject -- it does the actual
-     * work of turning a point time into the range and display string that componse
+     * @param time A time
+     * @return The number of the unit containing the time. The unit after it
+     *         is numbered one higher.
+     * @throws UnsupportedOperationException if {@link #hasUnitIndex()} is false
+     */
+    public long getUnitIndex(long time) {
+        throw new UnsupportedOperationException(getClass().getName() + " doesn't number its units");
+    }
+
+    /**
+     * The inverse of {@link #getUnitIndex(long)}. Should a time zone transition
+     * skip over the whole of a unit, so that no time has its number, the start
+     * of the next unit is returned.
+     *
+     * @param index The number of a unit
+     * @return The start time of the unit
+     * @throws UnsupportedOperationException if {@link #hasUnitIndex()} is false
+     */
+    public long getUnitTime(long index) {
+        throw new UnsupportedOperationException(getClass().getName() + " doesn't number its units");
+    }
+
+    /**
+     * This method converts from a time to a TimeObject -- it does the actual
+     * work of turning a point time into the range and display string that compose
      * a TimeObject.
      *
+     * The built-in labelers override this method and do their arithmetic without
+     * a Calendar. The default implementation wraps the time in a Calendar and passes
+     * it to {@link #timeObjectfromCalendar(Calendar)}, so subclasses must override
+     * at least one of the two methods.
+     *
+     * @param time The time to convert
+     * @return The resulting TimeObject
+     */
+    protected TimeObject timeObjectfromTime(long time) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(time);
+        return timeObjectfromCalendar(c);
+    }
+
+    /**
+     * This method converts from a calendar to a TimeObject. The default
+     * implementation passes the calendar's time to {@link #timeObjectfromTime(long)}.
+     *
      * @param c The time to convert
      * @return The resulting TimeObject
      */
-    protected abstract TimeObject timeObjectfromCalendar(Calendar c);
+    protected TimeObject timeObjectfromCalendar(Calendar c) {
+        return timeObjectfromTime(c.getTimeInMillis());
+    }
 
     /**
      * This method return the preferred width of TimeViews labeled by this labeler.
@@ -110,6 +563,59 @@ public abstract class Labeler {
      * @param minInterval
      */
     public void setMinuteInterval(int minInterval) {
-    	this.minuteInterval = minInterval;
+        final boolean changed = minInterval != this.minuteInterval;
+        this.minuteInterval = minInterval;
+        if (changed) {
+            // the cached TimeObjects span the old interval; cleared after the
+            // write, so that a concurrent lookup can't cache one built on it
+            clearCache();
+        }
+    }
+
+    /**
+     * Enables caching of the TimeObjects returned by {@link #getElem(long)}, so
+     * that looking up the same units again doesn't recompute them.
+     *
+     * The cache only serves the TimeObject API. ScrollLayout relabels its views
+     * through {@link #fill(long, int, MutableTimeObject[], int, int)}, which the
+     * built-in labelers compute directly, so it doesn't enable the cache; a
+     * custom labeler that leaves {@link #getElem(long, MutableTimeObject)} to
+     * this class can enable it for its anchor units.
+     *
+     * @param size The maximum number of TimeObjects to cache, or 0 to disable caching
+     */
+    public void setCacheSize(int size) {
+        if (size <= 0) {
+            mCache = null;
+        } else if (mCache == null || mCache.getCapacity() != size) {
+            mCache = new LongCache<TimeObject>(size);
+        }
+    }
+
+    /**
+     * Discards all cached TimeObjects. Subclasses must call this when something
+     * that affects the TimeObjects they produce changes.
+     */
+    public void clearCache() {
+        final LongCache<TimeObject> cache = mCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return The number of lookups that were answered from the cache
+     */
+    public int getCacheHits() {
+        final LongCache<TimeObject> cache = mCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    /**
+     * @return The number of lookups that had to compute a new TimeObject
+     */
+    public int getCacheMisses() {
+        final LongCache<TimeObject> cache = mCache;
+        return cache == null ? 0 : cache.getMisses();
     }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * Creates the labeler of a ScrollLayout from its labelerFormat attribute.
+ * Factories are registered by name with
+ * {@link LabelerRegistry#register(String, LabelerFactory)}, so that the
+ * labelerClass attribute of a ScrollLayout can name a labeler without it
+ * being constructed through reflection.
+ */
+public interface LabelerFactory {
+    /**
+     * @param formatString The format string of the labels
+     * @return A new labeler
+     */
+    public Labeler create(String formatString);
+}
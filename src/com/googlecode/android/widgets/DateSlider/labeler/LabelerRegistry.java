@@ -0,0 +1,166 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+
+/**
+ * Resolves the labelerClass attribute of a ScrollLayout to a
+ * {@link LabelerFactory}. The labelers of this package are registered under
+ * their fully qualified class names, as the layouts name them, and under
+ * their simple names, and are constructed directly, so creating a slider
+ * involves no reflection and no ProGuard keep rules for them. Apps register
+ * their own labelers with {@link #register(String, LabelerFactory)}.
+ *
+ * Other names are taken to be class names with a public constructor that
+ * takes the format string, and are looked up through reflection once; the
+ * factory that calls the constructor is then registered under the name.
+ */
+public final class LabelerRegistry {
+    private static final String PACKAGE = "com.googlecode.android.widgets.DateSlider.labeler.";
+
+    private static final HashMap<String, LabelerFactory> sFactories = new HashMap<String, LabelerFactory>();
+
+    private static final int DAY_DATE = 0, DAY = 1, HOUR = 2, MINUTE = 3, TIME = 4, MONTH = 5,
+            MONTH_YEAR = 6, YEAR = 7, WEEK = 8, ISO_WEEK = 9, RETAIL_WEEK = 10, FISCAL_PERIOD = 11,
+            STEP = 12, CHRONOLOGY_DAY = 13, CHRONOLOGY_MONTH = 14, CHRONOLOGY_MONTH_YEAR = 15,
+            CHRONOLOGY_YEAR = 16;
+
+    static {
+        registerBuiltIn("DayDateLabeler", DAY_DATE);
+        registerBuiltIn("DayLabeler", DAY);
+        registerBuiltIn("HourLabeler", HOUR);
+        registerBuiltIn("MinuteLabeler", MINUTE);
+        registerBuiltIn("TimeLabeler", TIME);
+        registerBuiltIn("MonthLabeler", MONTH);
+        registerBuiltIn("MonthYearLabeler", MONTH_YEAR);
+        registerBuiltIn("YearLabeler", YEAR);
+        registerBuiltIn("WeekLabeler", WEEK);
+        registerBuiltIn("IsoWeekLabeler", ISO_WEEK);
+        registerBuiltIn("RetailWeekLabeler", RETAIL_WEEK);
+        registerBuiltIn("FiscalPeriodLabeler", FISCAL_PERIOD);
+        registerBuiltIn("StepLabeler", STEP);
+        registerBuiltIn("ChronologyDayLabeler", CHRONOLOGY_DAY);
+        registerBuiltIn("ChronologyMonthLabeler", CHRONOLOGY_MONTH);
+        registerBuiltIn("ChronologyMonthYearLabeler", CHRONOLOGY_MONTH_YEAR);
+        registerBuiltIn("ChronologyYearLabeler", CHRONOLOGY_YEAR);
+    }
+
+    private LabelerRegistry() {
+    }
+
+    /**
+     * Constructs one of the labelers of this package, chosen by a switch
+     * rather than by a class per labeler
+     */
+    private static final class BuiltIn implements LabelerFactory {
+        private final int mKind;
+
+        BuiltIn(int kind) {
+            mKind = kind;
+        }
+
+        public Labeler create(String formatString) {
+            switch (mKind) {
+            case DAY_DATE: return new DayDateLabeler(formatString);
+            case DAY: return new DayLabeler(formatString);
+            case HOUR: return new HourLabeler(formatString);
+            case MINUTE: return new MinuteLabeler(formatString);
+            case TIME: return new TimeLabeler(formatString);
+            case MONTH: return new MonthLabeler(formatString);
+            case MONTH_YEAR: return new MonthYearLabeler(formatString);
+            case YEAR: return new YearLabeler(formatString);
+            case WEEK: return new WeekLabeler(formatString);
+            case ISO_WEEK: return new IsoWeekLabeler(formatString);
+            case RETAIL_WEEK: return new RetailWeekLabeler(formatString);
+            case FISCAL_PERIOD: return new FiscalPeriodLabeler(formatString);
+            case STEP: return new StepLabeler(formatString);
+            case CHRONOLOGY_DAY: return new ChronologyDayLabeler(formatString);
+            case CHRONOLOGY_MONTH: return new ChronologyMonthLabeler(formatString);
+            case CHRONOLOGY_MONTH_YEAR: return new ChronologyMonthYearLabeler(formatString);
+            case CHRONOLOGY_YEAR: return new ChronologyYearLabeler(formatString);
+            default: throw new IllegalStateException("Unknown labeler " + mKind);
+            }
+        }
+    }
+
+    /**
+     * Calls the public constructor of a labeler class that takes the format
+     * string
+     */
+    private static final class Reflective implements LabelerFactory {
+        private final Constructor<?> mConstructor;
+
+        Reflective(Constructor<?> constructor) {
+            mConstructor = constructor;
+        }
+
+        public Labeler create(String formatString) {
+            try {
+                return (Labeler)mConstructor.newInstance(formatString);
+            } catch (InvocationTargetException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                throw new RuntimeException(cause);
+            } catch (Exception e) {
+                throw new RuntimeException("Can't construct " + mConstructor.getDeclaringClass().getName(), e);
+            }
+        }
+    }
+
+    private static void registerBuiltIn(String simpleName, int kind) {
+        final LabelerFactory factory = new BuiltIn(kind);
+        // the names are spelled out, since ProGuard may rename the classes
+        sFactories.put(PACKAGE + simpleName, factory);
+        sFactories.put(simpleName, factory);
+    }
+
+    /**
+     * Registers a factory under a name, replacing any factory of that name.
+     *
+     * @param name The name, e.g. the fully qualified class name of the labeler
+     * @param factory The factory
+     */
+    public static synchronized void register(String name, LabelerFactory factory) {
+        if (name == null || factory == null) {
+            throw new IllegalArgumentException("name and factory must not be null");
+        }
+        sFactories.put(name, factory);
+    }
+
+    /**
+     * @param name A registered name, or the fully qualified name of a labeler
+     *        class with a public constructor that takes the format string
+     * @return The factory of the labeler
+     * @throws IllegalArgumentException if there is no such labeler
+     */
+    public static synchronized LabelerFactory getFactory(String name) {
+        LabelerFactory factory = sFactories.get(name);
+        if (factory == null) {
+            try {
+                final Class<?> klazz = Class.forName(name);
+                if (!Labeler.class.isAssignableFrom(klazz)) {
+                    throw new IllegalArgumentException(name + " is not a Labeler");
+                }
+                factory = new Reflective(klazz.getConstructor(String.class));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Unknown labeler " + name, e);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(name + " has no public constructor taking the format string", e);
+            }
+            sFactories.put(name, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * @param name The name of the labeler, see {@link #getFactory(String)}
+     * @param formatString The format string of the labels
+     * @return A new labeler
+     */
+    public static Labeler create(String name, String formatString) {
+        return getFactory(name).create(formatString);
+    }
+}
@@ -0,0 +1,166 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * A bounded cache keyed by a primitive long, such as the start time of a
+ * unit. It holds the labelers' TimeObjects and the EnrichmentLoader's
+ * enrichments.
+ *
+ * Entries are kept in parallel arrays and located through an open-addressed
+ * hash table of entry indexes, so lookups don't box their keys. When the
+ * cache is full, an entry is evicted with the clock algorithm: the hand
+ * sweeps over the entries, sparing (and clearing the mark of) any entry
+ * that has been read since the hand last passed it.
+ *
+ * The public methods are synchronized, since the ScrollLayout's prefetch
+ * thread labels units through the same Labeler as the UI thread.
+ *
+ * @param <V> The type of the values, which mustn't be null
+ */
+class LongCache<V> {
+    private final long[] mKeys;
+    private final Object[] mValues;
+    private final boolean[] mReferenced;
+    /**
+     * The hash table. Each slot holds an entry index plus one, or 0 if empty.
+     */
+    private final int[] mSlots;
+    private final int mMask;
+    private int mSize;
+    private int mHand;
+    private int mHits, mMisses;
+
+    /**
+     * @param capacity The maximum number of values to keep
+     */
+    public LongCache(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mReferenced = new boolean[capacity];
+        // keep the hash table at most half full
+        int slots = 2;
+        while (slots < capacity * 2) {
+            slots <<= 1;
+        }
+        mSlots = new int[slots];
+        mMask = slots - 1;
+    }
+
+    public int getCapacity() {
+        return mKeys.length;
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @param key A key
+     * @return The cached value for the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(long key) {
+        final int slot = findSlot(key);
+        final int entry = mSlots[slot] - 1;
+        if (entry < 0) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        mReferenced[entry] = true;
+        return (V)mValues[entry];
+    }
+
+    /**
+     * Caches the value for a key, evicting another key if the cache is full.
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public synchronized void put(long key, V value) {
+        int slot = findSlot(key);
+        int entry = mSlots[slot] - 1;
+        if (entry < 0) {
+            if (mSize < mKeys.length) {
+                entry = mSize++;
+            } else {
+                entry = evict();
+                // removing the old entry may have moved the slot we found
+                slot = findSlot(key);
+            }
+            mSlots[slot] = entry + 1;
+            mKeys[entry] = key;
+            mReferenced[entry] = false;
+        }
+        mValues[entry] = value;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < mSlots.length; i++) {
+            mSlots[i] = 0;
+        }
+        for (int i = 0; i < mSize; i++) {
+            mValues[i] = null;
+        }
+        mSize = 0;
+        mHand = 0;
+    }
+
+    /**
+     * Advances the clock hand to an unreferenced entry and removes it from
+     * the hash table.
+     *
+     * @return The index of the freed entry
+     */
+    private int evict() {
+        while (mReferenced[mHand]) {
+            mReferenced[mHand] = false;
+            mHand = (mHand + 1) % mKeys.length;
+        }
+        final int entry = mHand;
+        mHand = (mHand + 1) % mKeys.length;
+        removeSlot(findSlot(mKeys[entry]));
+        return entry;
+    }
+
+    /**
+     * @return The slot holding the key, or the empty slot where it would be inserted
+     */
+    private int findSlot(long key) {
+        int slot = hash(key) & mMask;
+        while (mSlots[slot] != 0 && mKeys[mSlots[slot] - 1] != key) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot, shifting back any following entries that would
+     * otherwise become unreachable by linear probing.
+     */
+    private void removeSlot(int slot) {
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mMask;
+            if (mSlots[next] == 0) {
+                break;
+            }
+            final int home = hash(mKeys[mSlots[next] - 1]) & mMask;
+            // leave the entry alone if its home slot lies cyclically in (slot, next]
+            if (slot <= next ? (slot < home && home <= next) : (slot < home || home <= next)) {
+                continue;
+            }
+            mSlots[slot] = mSlots[next];
+            slot = next;
+        }
+        mSlots[slot] = 0;
+    }
+
+    private static int hash(long key) {
+        final int h = (int)(key ^ (key >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,32 +1,62 @@
 package com.googlecode.android.widgets.DateSlider.labeler;
 
-import java.util.Calendar;
-
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
 
 /**
  * A Labeler that displays minutes
  */
 public class MinuteLabeler extends Labeler {
-    private final String mFormatString;
+    private final LabelFormat mFormat;
 
     public MinuteLabeler(String formatString) {
         super(45, 60);
-        mFormatString = formatString;
+        mFormat = LabelFormat.forFormat(formatString);
     }
 
     @Override
     public TimeObject add(long time, int val) {
-        return timeObjectfromCalendar(Util.addMinutes(time, val, minuteInterval));
+        return getElem(Util.addMinutes(time, val, minuteInterval));
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        getElem(Util.addMinutes(time, val, minuteInterval), out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        Util.getMinute(time, mFormat, minuteInterval, out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        Util.fillMinutes(time, first, mFormat, minuteInterval, out, off, count);
+    }
+
+    @Override
+    public boolean hasUnitIndex() {
+        return true;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        return Util.getUnitIndex(Util.MINUTES, minuteInterval, time);
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        return Util.getUnitTime(Util.MINUTES, minuteInterval, index);
+    }
+
+    @Override
+    protected long getUnitStart(long time) {
+        return Util.getMinuteStart(time, minuteInterval);
     }
 
     @Override
-    protected TimeObject timeObjectfromCalendar(Calendar c) {
-    	if (minuteInterval>1) {
-    		int minutes = c.get(Calendar.MINUTE);
-    		c.set(Calendar.MINUTE, minutes-(minutes%minuteInterval));
-    	}
-        return Util.getMinute(c, mFormatString, minuteInterval);
+    protected TimeObject timeObjectfromTime(long time) {
+        return Util.getMinute(time, mFormat, minuteInterval);
     }
 
 }
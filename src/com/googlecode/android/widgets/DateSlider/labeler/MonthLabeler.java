@@ -1,27 +1,61 @@
 package com.googlecode.android.widgets.DateSlider.labeler;
 
-import java.util.Calendar;
-
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
 
 /**
  * A Labeler that displays months
  */
 public class MonthLabeler extends Labeler {
-    private final String mFormatString;
+    private final LabelFormat mFormat;
 
     public MonthLabeler(String formatString) {
         super(180, 60);
-        mFormatString = formatString;
+        mFormat = LabelFormat.forFormat(formatString);
     }
 
     @Override
     public TimeObject add(long time, int val) {
-        return timeObjectfromCalendar(Util.addMonths(time, val));
+        return getElem(Util.addMonths(time, val));
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        getElem(Util.addMonths(time, val), out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        Util.getMonth(time, mFormat, out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        Util.fillMonths(time, first, mFormat, out, off, count);
+    }
+
+    @Override
+    public boolean hasUnitIndex() {
+        return true;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        return Util.getUnitIndex(Util.MONTHS, 1, time);
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        return Util.getUnitTime(Util.MONTHS, 1, index);
+    }
+
+    @Override
+    protected long getUnitStart(long time) {
+        return Util.getMonthStart(time);
     }
 
     @Override
-    protected TimeObject timeObjectfromCalendar(Calendar c) {
-        return Util.getMonth(c, mFormatString);
+    protected TimeObject timeObjectfromTime(long time) {
+        return Util.getMonth(time, mFormat);
     }
 }
\ No newline at end of file
@@ -0,0 +1,295 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Locale;
+
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
+import com.googlecode.android.widgets.DateSlider.TimeObject;
+
+/**
+ * A Labeler for calendars of irregular periods that Calendar fields can't
+ * describe, such as 4-4-5 fiscal periods or retail weeks. Subclasses define
+ * the periods of each year with {@link #getPeriodStarts(int)}, either by a
+ * rule or from an explicit list of boundaries.
+ *
+ * The period starts are collected into one sorted array, which grows a block
+ * of years at a time around the times that are looked up, so finding the
+ * period of a time is a binary search, and stepping between periods is an
+ * index increment. Periods start at local midnight, and are kept as day
+ * numbers (see {@link CivilTime}) so that they don't depend on the time zone.
+ *
+ * The label of a period is the format string applied to the year, the number
+ * of the period within the year (starting at 1) and the start time, so e.g.
+ * "P%2$d FY%1$d" or "%3$tb %3$te". To use different rules from a layout,
+ * subclass the labeler and configure it in the constructor.
+ */
+public abstract class PeriodLabeler extends Labeler {
+    /**
+     * The number of years added to the table when a lookup falls outside of it
+     */
+    private static final int BLOCK_YEARS = 8;
+
+    private final String mFormatString;
+    private volatile Table mTable;
+
+    /**
+     * An immutable snapshot of the known periods. Period i starts on day
+     * starts[i] and is number numbers[i] of year years[i]; the last element
+     * of starts is only the end of the last period. Its unit index is
+     * base + i.
+     */
+    private static final class Table {
+        final int firstYear, lastYear;
+        final long base;
+        final long[] starts;
+        final int[] years, numbers;
+        /**
+         * The labels of the periods, formatted as they're needed, in locale
+         */
+        final CharSequence[] labels;
+        final Locale locale;
+
+        Table(int firstYear, int lastYear, long base, long[] starts, int[] years, int[] numbers,
+                CharSequence[] labels, Locale locale) {
+            this.firstYear = firstYear;
+            this.lastYear = lastYear;
+            this.base = base;
+            this.starts = starts;
+            this.years = years;
+            this.numbers = numbers;
+            this.labels = labels;
+            this.locale = locale;
+        }
+
+        int size() {
+            return years.length;
+        }
+    }
+
+    public PeriodLabeler(String formatString, int viewWidthDP, int viewHeightDP) {
+        super(viewWidthDP, viewHeightDP);
+        mFormatString = formatString;
+    }
+
+    /**
+     * Returns the day numbers of the first days of the periods of a year.
+     * The first period of the next year ends the last period of the year, so
+     * the years must follow on from each other.
+     *
+     * @param year A year, as numbered by this calendar
+     * @return The day numbers of the starts of its periods, in increasing order
+     */
+    protected abstract long[] getPeriodStarts(int year);
+
+    /**
+     * @param day A day number
+     * @return A guess at the year of this calendar that contains the day. The
+     *         default is the calendar year of the day.
+     */
+    protected int guessYear(long day) {
+        return CivilTime.year(CivilTime.civilFromDays(day));
+    }
+
+    /**
+     * Discards the periods computed so far. Subclasses must call this when
+     * something that affects {@link #getPeriodStarts(int)} changes.
+     */
+    protected void resetPeriods() {
+        synchronized (this) {
+            mTable = null;
+        }
+        clearCache();
+    }
+
+    @Override
+    public TimeObject add(long time, int val) {
+        return getElem(getUnitTime(getUnitIndex(time) + val));
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        setPeriod(getUnitIndex(time) + val, out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        setPeriod(getUnitIndex(time), out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        final long index = getUnitIndex(time) + first;
+        for (int k = 0; k < count; k++) {
+            setPeriod(index + k, out[off + k]);
+        }
+    }
+
+    @Override
+    public boolean hasUnitIndex() {
+        return true;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        final long day = CivilTime.floorDiv(ZoneOffsets.getDefault().toLocal(time), CivilTime.DAY);
+        Table t = tableForDay(day);
+        final long[] starts = t.starts;
+        // find the last period starting on or before the day
+        int lo = 0, hi = t.size() - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= day) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return t.base + lo;
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        final Table t = tableForIndex(index);
+        return ZoneOffsets.getDefault().toUtc(t.starts[(int)(index - t.base)] * CivilTime.DAY);
+    }
+
+    @Override
+    protected long getUnitStart(long time) {
+        return getUnitTime(getUnitIndex(time));
+    }
+
+    @Override
+    protected TimeObject timeObjectfromTime(long time) {
+        MutableTimeObject out = new MutableTimeObject();
+        getElem(time, out);
+        return out.toTimeObject();
+    }
+
+    private void setPeriod(long index, MutableTimeObject out) {
+        final Table t = tableForIndex(index);
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final int i = (int)(index - t.base);
+        final long startTime = z.toUtc(t.starts[i] * CivilTime.DAY);
+        final long endTime = z.toUtc(t.starts[i + 1] * CivilTime.DAY - 1);
+        out.set(getLabel(t, i, startTime), startTime, endTime);
+    }
+
+    private CharSequence getLabel(Table t, int i, long startTime) {
+        final Locale locale = Locale.getDefault();
+        if (!locale.equals(t.locale)) {
+            t = relabel(t, locale);
+        }
+        CharSequence label = t.labels[i];
+        if (label == null) {
+            // Strings are immutable, so other threads can safely read this
+            // slot without synchronization
+            label = LabelFormat.formatParts(mFormatString, t.years[i], t.numbers[i], startTime);
+            t.labels[i] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @return A table containing the period with the unit index
+     */
+    private Table tableForIndex(long index) {
+        Table t = mTable;
+        if (t == null) {
+            t = extend(0, CivilTime.floorDiv(System.currentTimeMillis(), CivilTime.DAY));
+        }
+        while (index < t.base || index >= t.base + t.size()) {
+            t = extend(index < t.base ? -1 : 1, 0);
+        }
+        return t;
+    }
+
+    /**
+     * @return A table containing the period with the day
+     */
+    private Table tableForDay(long day) {
+        Table t = mTable;
+        if (t == null) {
+            t = extend(0, day);
+        }
+        while (day < t.starts[0] || day >= t.starts[t.size()]) {
+            t = extend(day < t.starts[0] ? -1 : 1, day);
+        }
+        return t;
+    }
+
+    /**
+     * Adds a block of years before (direction -1) or after (direction 1) the
+     * table, or creates it around the day (direction 0).
+     */
+    private synchronized Table extend(int direction, long day) {
+        final Table t = mTable;
+        if (t == null) {
+            final int from = guessYear(day) - BLOCK_YEARS / 2;
+            return mTable = build(from, from + BLOCK_YEARS - 1, null, 0, Locale.getDefault());
+        } else if (direction < 0) {
+            return mTable = build(t.firstYear - BLOCK_YEARS, t.firstYear - 1, t, -1, t.locale);
+        } else {
+            return mTable = build(t.lastYear + 1, t.lastYear + BLOCK_YEARS, t, 1, t.locale);
+        }
+    }
+
+    /**
+     * Builds a table of the periods of the years from "from" to "to", joined to
+     * the end (direction 1) or the start (direction -1) of an existing table.
+     */
+    private Table build(int from, int to, Table t, int direction, Locale locale) {
+        long[][] blocks = new long[to - from + 2][];
+        int count = 0;
+        for (int year = from; year <= to + 1; year++) {
+            blocks[year - from] = getPeriodStarts(year);
+            if (year <= to) {
+                count += blocks[year - from].length;
+            }
+        }
+        final int old = t == null ? 0 : t.size();
+        final int size = count + old;
+        final long[] starts = new long[size + 1];
+        final int[] years = new int[size];
+        final int[] numbers = new int[size];
+        final CharSequence[] labels = new CharSequence[size];
+        // the new periods go after the old ones when appending, and before them otherwise
+        final int newAt = direction > 0 ? old : 0;
+        final int oldAt = direction > 0 ? 0 : count;
+        int k = newAt;
+        for (int year = from; year <= to; year++) {
+            final long[] block = blocks[year - from];
+            for (int n = 0; n < block.length; n++) {
+                starts[k] = block[n];
+                years[k] = year;
+                numbers[k] = n + 1;
+                k++;
+            }
+        }
+        starts[k] = blocks[to + 1 - from][0];
+        if (t != null) {
+            // copying the old end over the start of the next year is harmless, as they're the same day
+            System.arraycopy(t.starts, 0, starts, oldAt, old + (direction > 0 ? 0 : 1));
+            System.arraycopy(t.years, 0, years, oldAt, old);
+            System.arraycopy(t.numbers, 0, numbers, oldAt, old);
+            System.arraycopy(t.labels, 0, labels, oldAt, old);
+        }
+        if (t == null) {
+            return new Table(from, to, 0, starts, years, numbers, labels, locale);
+        } else if (direction > 0) {
+            return new Table(t.firstYear, to, t.base, starts, years, numbers, labels, locale);
+        } else {
+            return new Table(from, t.lastYear, t.base - count, starts, years, numbers, labels, locale);
+        }
+    }
+
+    /**
+     * @return A copy of the table whose labels are to be formatted in the locale
+     */
+    private synchronized Table relabel(Table t, Locale locale) {
+        final Table relabeled = new Table(t.firstYear, t.lastYear, t.base, t.starts, t.years,
+                t.numbers, new CharSequence[t.size()], locale);
+        if (mTable == t) {
+            mTable = relabeled;
+        }
+        return relabeled;
+    }
+}
@@ -0,0 +1,125 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Locale;
+
+/**
+ * The Solar Hijri (Persian) calendar. The first six months have 31 days, the
+ * next five 30, and the last 29, or 30 in leap years. Leap years follow the
+ * astronomical rule, as approximated by the table of 33-year cycle breaks of
+ * Borkowski's algorithm, which is exact for the years 1 to 3177 AP.
+ *
+ * The day each year starts on is computed once for the whole range, so a
+ * date conversion is an estimate of the year corrected against that table.
+ */
+final class PersianChronology extends Chronology {
+    private static final int MIN_YEAR = 1;
+    private static final int MAX_YEAR = 3177;
+    /**
+     * The years at which the pattern of leap years in 33-year cycles changes
+     */
+    private static final int[] BREAKS = {
+        -61, 9, 38, 199, 426, 686, 756, 818, 1111, 1181, 1210,
+        1635, 2060, 2097, 2192, 2262, 2324, 2394, 2456, 3178
+    };
+    /**
+     * The day of the year on which each month starts, and the length of a common year
+     */
+    private static final int[] MONTH_STARTS = { 0, 31, 62, 93, 124, 155, 186, 216, 246, 276, 306, 336, 365 };
+
+    private static final String[] NAMES = {
+        "Farvardin", "Ordibehesht", "Khordad", "Tir", "Mordad", "Shahrivar",
+        "Mehr", "Aban", "Azar", "Dey", "Bahman", "Esfand"
+    };
+    private static final String[] PERSIAN_NAMES = {
+        "\u0641\u0631\u0648\u0631\u062F\u06CC\u0646", "\u0627\u0631\u062F\u06CC\u0628\u0647\u0634\u062A",
+        "\u062E\u0631\u062F\u0627\u062F", "\u062A\u06CC\u0631", "\u0645\u0631\u062F\u0627\u062F",
+        "\u0634\u0647\u0631\u06CC\u0648\u0631", "\u0645\u0647\u0631", "\u0622\u0628\u0627\u0646",
+        "\u0622\u0630\u0631", "\u062F\u06CC", "\u0628\u0647\u0645\u0646", "\u0627\u0633\u0641\u0646\u062F"
+    };
+
+    /**
+     * The day number of 1 Farvardin of each year from MIN_YEAR to MAX_YEAR + 1
+     */
+    private final long[] mYearStarts = new long[MAX_YEAR - MIN_YEAR + 2];
+
+    PersianChronology() {
+        for (int year = MIN_YEAR; year <= MAX_YEAR + 1; year++) {
+            mYearStarts[year - MIN_YEAR] = computeYearStart(year);
+        }
+    }
+
+    /**
+     * Works out the Gregorian day in March on which a year starts, following
+     * Borkowski's algorithm.
+     */
+    private static long computeYearStart(int year) {
+        final int gy = year + 621;
+        int leapJ = -14;
+        int jp = BREAKS[0];
+        int jump = 0;
+        for (int i = 1; i < BREAKS.length; i++) {
+            final int jm = BREAKS[i];
+            jump = jm - jp;
+            if (year < jm) {
+                break;
+            }
+            leapJ += jump / 33 * 8 + jump % 33 / 4;
+            jp = jm;
+        }
+        final int n = year - jp;
+        leapJ += n / 33 * 8 + (n % 33 + 3) / 4;
+        if (jump % 33 == 4 && jump - n == 4) {
+            leapJ++;
+        }
+        final int leapG = gy / 4 - (gy / 100 + 1) * 3 / 4 - 150;
+        return CivilTime.daysFromCivil(gy, 2, 20 + leapJ - leapG);
+    }
+
+    @Override
+    public String getName() {
+        return "persian";
+    }
+
+    @Override
+    public int fromDays(long days) {
+        if (days < mYearStarts[0] || days >= mYearStarts[mYearStarts.length - 1]) {
+            throw new IllegalArgumentException("Day out of range: " + days);
+        }
+        // estimate the year from the mean year length, then correct it
+        int i = (int)Math.min(mYearStarts.length - 2, (days - mYearStarts[0]) * 33 / 12053);
+        while (days < mYearStarts[i]) {
+            i--;
+        }
+        while (days >= mYearStarts[i + 1]) {
+            i++;
+        }
+        final int dayOfYear = (int)(days - mYearStarts[i]);
+        final int m = dayOfYear < MONTH_STARTS[6] ? dayOfYear / 31 : Math.min(11, 6 + (dayOfYear - MONTH_STARTS[6]) / 30);
+        return CivilTime.pack(i + MIN_YEAR, m, dayOfYear - MONTH_STARTS[m] + 1);
+    }
+
+    @Override
+    public long toDays(int year, int month, int day) {
+        return yearStart(year) + MONTH_STARTS[month] + day - 1;
+    }
+
+    @Override
+    public int getDaysInMonth(int year, int month) {
+        if (month == 11) {
+            return (int)(yearStart(year + 1) - yearStart(year)) - MONTH_STARTS[11];
+        }
+        return MONTH_STARTS[month + 1] - MONTH_STARTS[month];
+    }
+
+    @Override
+    public String getMonthName(int month, Locale locale) {
+        return "fa".equals(locale.getLanguage()) ? PERSIAN_NAMES[month] : NAMES[month];
+    }
+
+    private long yearStart(int year) {
+        if (year < MIN_YEAR || year > MAX_YEAR + 1) {
+            throw new IllegalArgumentException("Year out of range: " + year);
+        }
+        return mYearStarts[year - MIN_YEAR];
+    }
+}
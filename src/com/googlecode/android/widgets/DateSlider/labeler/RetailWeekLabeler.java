@@ -0,0 +1,27 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Calendar;
+
+/**
+ * A FiscalPeriodLabeler that displays the weeks of the fiscal year, numbered
+ * from 1 to 52 or 53. By default it follows the retail (NRF 4-5-4) calendar:
+ * years end on the Saturday nearest to the end of January, and are named
+ * after the calendar year in which they start.
+ */
+public class RetailWeekLabeler extends FiscalPeriodLabeler {
+
+    public RetailWeekLabeler(String formatString) {
+        super(formatString);
+        setYearEnd(Calendar.JANUARY, Calendar.SATURDAY, true, false);
+    }
+
+    @Override
+    protected long[] getPeriodStarts(int year) {
+        final long start = getYearStart(year);
+        long[] starts = new long[(int)(getYearStart(year + 1) - start) / 7];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = start + 7 * i;
+        }
+        return starts;
+    }
+}
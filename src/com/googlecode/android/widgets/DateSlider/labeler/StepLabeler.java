@@ -0,0 +1,200 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
+import com.googlecode.android.widgets.DateSlider.TimeObject;
+
+/**
+ * A Labeler whose units are a fixed step of local time, such as 5 seconds or
+ * 90 minutes. Unlike MinuteLabeler, the step needn't divide an hour: units are
+ * aligned to an origin (an offset from local midnight of 1 January 1970) and
+ * numbered by dividing the local time since the origin by the step, so that
+ * finding or stepping to a unit is a few arithmetic operations.
+ *
+ * Units are laid out on local time, so they stay aligned to the wall clock
+ * across daylight saving transitions. A unit that a transition skips over
+ * altogether is never labeled, and one that it partly skips starts at the
+ * transition.
+ *
+ * When the labeler is created from a layout, the step and origin are taken
+ * from the labelerStep and labelerStepOrigin attributes, in seconds. The step
+ * defaults to one minute.
+ */
+public class StepLabeler extends Labeler {
+    private final LabelFormat mFormat;
+    /**
+     * The length of a unit, in milliseconds
+     */
+    private volatile long mStep = CivilTime.MINUTE;
+    /**
+     * The local time that unit 0 starts at
+     */
+    private volatile long mOrigin = 0;
+
+    public StepLabeler(String formatString) {
+        super(80, 60);
+        mFormat = LabelFormat.forFormat(formatString);
+    }
+
+    /**
+     * @param formatString The format string
+     * @param step The length of a unit, in milliseconds
+     * @param origin The local time at which some unit starts, in milliseconds
+     *        since the local epoch
+     */
+    public StepLabeler(String formatString, long step, long origin) {
+        this(formatString);
+        setStep(step, origin);
+    }
+
+    /**
+     * Changes the length and alignment of the units.
+     *
+     * @param step The length of a unit, in milliseconds
+     * @param origin The local time at which some unit starts, in milliseconds
+     *        since the local epoch
+     */
+    public void setStep(long step, long origin) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must be positive: " + step);
+        }
+        final boolean changed = step != mStep || origin != mOrigin;
+        mStep = step;
+        mOrigin = origin;
+        if (changed) {
+            // the cached TimeObjects span the old units; cleared after the
+            // writes, so that a concurrent lookup can't cache one built on them
+            clearCache();
+        }
+    }
+
+    public long getStep() {
+        return mStep;
+    }
+
+    public long getOrigin() {
+        return mOrigin;
+    }
+
+    @Override
+    public TimeObject add(long time, int val) {
+        return getElem(addUnits(time, val));
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        getElem(addUnits(time, val), out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        setUnit(ZoneOffsets.getDefault(), getUnitIndex(time), out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        if (count <= 0) {
+            return;
+        }
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        long index = getUnitIndex(time);
+        int anchor = off - first;
+        for (; anchor < off; anchor++) {
+            index = nextUnit(z, index);
+        }
+        for (; anchor >= off + count; anchor--) {
+            index = previousUnit(z, index);
+        }
+        long i = index;
+        for (int k = anchor; k < off + count; k++) {
+            setUnit(z, i, out[k]);
+            i = nextUnit(z, i);
+        }
+        i = index;
+        for (int k = anchor - 1; k >= off; k--) {
+            i = previousUnit(z, i);
+            setUnit(z, i, out[k]);
+        }
+    }
+
+    @Override
+    public boolean hasUnitIndex() {
+        return true;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        return CivilTime.floorDiv(ZoneOffsets.getDefault().toLocal(time) - mOrigin, mStep);
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        return ZoneOffsets.getDefault().toUtcCeiling(localStart(index));
+    }
+
+    @Override
+    protected long getUnitStart(long time) {
+        return getUnitTime(getUnitIndex(time));
+    }
+
+    @Override
+    protected TimeObject timeObjectfromTime(long time) {
+        MutableTimeObject out = new MutableTimeObject();
+        getElem(time, out);
+        return out.toTimeObject();
+    }
+
+    /**
+     * @return A time in the unit val units away from the one containing the time
+     */
+    private long addUnits(long time, int val) {
+        final long index = getUnitIndex(time) + val;
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long start = z.toUtcCeiling(localStart(index));
+        // if a transition skips the whole unit, start lies in the unit after
+        // the gap; when moving back, land on the unit before it instead
+        if (val < 0 && z.toLocal(start) >= localStart(index + 1)) {
+            return start - 1;
+        }
+        return start;
+    }
+
+    /**
+     * Sets a unit's times. Like the units of the other labelers, a unit
+     * whose local times occur twice, as clocks go back, spans the later
+     * occurrence, and one that a transition partly skips is cut short.
+     */
+    private void setUnit(ZoneOffsets z, long index, MutableTimeObject out) {
+        final long last = localStart(index + 1) - 1;
+        long endTime = z.toUtc(last);
+        if (z.toLocal(endTime) != last) {
+            // the unit ends in a gap
+            endTime = z.toUtcCeiling(last) - 1;
+        }
+        out.set(mFormat, z.toUtcCeiling(localStart(index)), endTime);
+    }
+
+    /**
+     * @return The index of the next unit that isn't skipped by a time zone transition
+     */
+    private long nextUnit(ZoneOffsets z, long index) {
+        final long start = localStart(index + 1);
+        final long local = z.toLocal(z.toUtcCeiling(start));
+        return local == start ? index + 1 : CivilTime.floorDiv(local - mOrigin, mStep);
+    }
+
+    /**
+     * @return The index of the previous unit that isn't skipped by a time zone transition
+     */
+    private long previousUnit(ZoneOffsets z, long index) {
+        final long start = z.toUtcCeiling(localStart(index - 1));
+        if (z.toLocal(start) < localStart(index)) {
+            return index - 1;
+        }
+        // the gap covers the whole unit, so go to the one before it
+        return CivilTime.floorDiv(z.toLocal(start - 1) - mOrigin, mStep);
+    }
+
+    private long localStart(long index) {
+        return mOrigin + index * mStep;
+    }
+}
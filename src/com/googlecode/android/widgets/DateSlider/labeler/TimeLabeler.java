@@ -1,9 +1,6 @@
 package com.googlecode.android.widgets.DateSlider.labeler;
 
-import java.util.Calendar;
-
-import android.util.Log;
-
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
 
 /**
@@ -12,32 +9,87 @@ import com.googlecode.android.widgets.DateSlider.TimeObject;
 public class TimeLabeler extends Labeler {
     public static int MINUTEINTERVAL = 15;
 
-    private final String mFormatString;
+    private final LabelFormat mFormat;
+    /**
+     * The value of MINUTEINTERVAL that the cached TimeObjects were computed with
+     */
+    private volatile int mCachedInterval = MINUTEINTERVAL;
 
     public TimeLabeler(String formatString) {
         super(80, 60);
-        mFormatString = formatString;
+        mFormat = LabelFormat.forFormat(formatString);
     }
 
     @Override
     public TimeObject add(long time, int val) {
-        return timeObjectfromCalendar(Util.addMinutes(time, val*MINUTEINTERVAL));
+        return getElem(Util.addMinutes(time, val*MINUTEINTERVAL));
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        getElem(Util.addMinutes(time, val*MINUTEINTERVAL), out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        Util.getTime(time, mFormat, MINUTEINTERVAL, out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        Util.fillTimes(time, first, mFormat, MINUTEINTERVAL, out, off, count);
     }
 
     /**
-     * override this method to set the inital TimeObject to a multiple of MINUTEINTERVAL
+     * Units are only numbered consecutively when MINUTEINTERVAL divides an hour,
+     * since otherwise the unit that crosses the top of the hour is followed by
+     * one that starts after the hour rather than at it.
+     */
+    @Override
+    public boolean hasUnitIndex() {
+        return 60 % MINUTEINTERVAL == 0;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        if (!hasUnitIndex()) {
+            return super.getUnitIndex(time);
+        }
+        return Util.getUnitIndex(Util.MINUTES, MINUTEINTERVAL, time);
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        if (!hasUnitIndex()) {
+            return super.getUnitTime(index);
+        }
+        return Util.getUnitTime(Util.MINUTES, MINUTEINTERVAL, index);
+    }
+
+    /**
+     * MINUTEINTERVAL is a public static, so check whether it has changed
+     * under the cache before using it
      */
     @Override
     public TimeObject getElem(long time) {
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(time);
-        c.set(Calendar.MINUTE, c.get(Calendar.MINUTE)/MINUTEINTERVAL*MINUTEINTERVAL);
-        Log.v("GETELEM","getelem: "+c.get(Calendar.MINUTE));
-        return timeObjectfromCalendar(c);
+        if (mCachedInterval != MINUTEINTERVAL) {
+            mCachedInterval = MINUTEINTERVAL;
+            clearCache();
+        }
+        return super.getElem(time);
     }
 
     @Override
-    protected TimeObject timeObjectfromCalendar(Calendar c) {
-        return Util.getTime(c, mFormatString, MINUTEINTERVAL);
+    protected long getUnitStart(long time) {
+        return Util.getMinuteStart(time, MINUTEINTERVAL);
+    }
+
+    /**
+     * Util.getTime() rounds the time down to a multiple of MINUTEINTERVAL, so the
+     * initial TimeObject is aligned as well
+     */
+    @Override
+    protected TimeObject timeObjectfromTime(long time) {
+        return Util.getTime(time, mFormat, MINUTEINTERVAL);
     }
 }
\ No newline at end of file
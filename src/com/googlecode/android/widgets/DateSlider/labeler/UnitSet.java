@@ -0,0 +1,239 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+/**
+ * A set of unit indexes (see {@link Labeler#getUnitIndex(long)}), such as the
+ * days that can't be selected. It's a bitset split into pages of
+ * {@value #PAGE_SIZE} units, of which only those containing a unit of the set
+ * are allocated, so thousands of days spread over a few decades take a few
+ * kilobytes however far they are from the epoch.
+ *
+ * Finding the page of a unit is a binary search over the allocated pages,
+ * which are few, and {@link #nextClear(long)} and {@link #previousClear(long)}
+ * skip a word of 64 units at a time, so finding the nearest unit outside of
+ * the set doesn't step through the units of a long run one by one.
+ *
+ * The set isn't synchronized; Labeler keeps a copy of the set it is given.
+ */
+public final class UnitSet {
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_WORDS = PAGE_SIZE / 64;
+
+    /**
+     * The page numbers of the allocated pages, in increasing order
+     */
+    private long[] mKeys = new long[4];
+    private long[][] mPages = new long[4][];
+    private int mPageCount;
+
+    public UnitSet() {
+    }
+
+    /**
+     * Creates a copy of another set.
+     */
+    public UnitSet(UnitSet other) {
+        mPageCount = other.mPageCount;
+        mKeys = new long[Math.max(mPageCount, 4)];
+        mPages = new long[mKeys.length][];
+        System.arraycopy(other.mKeys, 0, mKeys, 0, mPageCount);
+        for (int i = 0; i < mPageCount; i++) {
+            mPages[i] = other.mPages[i].clone();
+        }
+    }
+
+    /**
+     * Adds a unit to the set.
+     */
+    public void add(long index) {
+        final long[] page = getOrCreatePage(index >> PAGE_SHIFT);
+        final int bit = (int)(index & (PAGE_SIZE - 1));
+        page[bit >> 6] |= 1L << bit;
+    }
+
+    /**
+     * Adds the units from "from" to "to", inclusive, to the set.
+     */
+    public void add(long from, long to) {
+        while (from <= to) {
+            final long pageEnd = ((from >> PAGE_SHIFT) + 1) << PAGE_SHIFT;
+            final long last = Math.min(to, pageEnd - 1);
+            final long[] page = getOrCreatePage(from >> PAGE_SHIFT);
+            for (long i = from; i <= last; ) {
+                final int bit = (int)(i & (PAGE_SIZE - 1));
+                final int n = (int)Math.min(64 - (bit & 63), last - i + 1);
+                final long mask = n == 64 ? -1L : ((1L << n) - 1) << (bit & 63);
+                page[bit >> 6] |= mask;
+                i += n;
+            }
+            if (last == Long.MAX_VALUE) {
+                break;
+            }
+            from = last + 1;
+        }
+    }
+
+    /**
+     * Removes a unit from the set.
+     */
+    public void remove(long index) {
+        final int i = findPage(index >> PAGE_SHIFT);
+        if (i >= 0) {
+            final int bit = (int)(index & (PAGE_SIZE - 1));
+            mPages[i][bit >> 6] &= ~(1L << bit);
+        }
+    }
+
+    /**
+     * Removes all units from the set.
+     */
+    public void clear() {
+        for (int i = 0; i < mPageCount; i++) {
+            mPages[i] = null;
+        }
+        mPageCount = 0;
+    }
+
+    /**
+     * @return true if the unit is in the set
+     */
+    public boolean contains(long index) {
+        final int i = findPage(index >> PAGE_SHIFT);
+        if (i < 0) {
+            return false;
+        }
+        final int bit = (int)(index & (PAGE_SIZE - 1));
+        return (mPages[i][bit >> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return true if the set has no units
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < mPageCount; i++) {
+            for (long word : mPages[i]) {
+                if (word != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The first unit at or after index that isn't in the set
+     */
+    public long nextClear(long index) {
+        while (true) {
+            final int i = findPage(index >> PAGE_SHIFT);
+            if (i < 0) {
+                return index;
+            }
+            final long[] page = mPages[i];
+            int bit = (int)(index & (PAGE_SIZE - 1));
+            int w = bit >> 6;
+            // treat the units before index as set
+            long word = page[w] | ((1L << (bit & 63)) - 1);
+            while (word == -1L && ++w < PAGE_WORDS) {
+                word = page[w];
+            }
+            if (w < PAGE_WORDS) {
+                return (index & ~(long)(PAGE_SIZE - 1)) + (w << 6) + Long.numberOfTrailingZeros(~word);
+            }
+            index = ((index >> PAGE_SHIFT) + 1) << PAGE_SHIFT;
+        }
+    }
+
+    /**
+     * @return The last unit at or before index that isn't in the set
+     */
+    public long previousClear(long index) {
+        while (true) {
+            final int i = findPage(index >> PAGE_SHIFT);
+            if (i < 0) {
+                return index;
+            }
+            final long[] page = mPages[i];
+            int bit = (int)(index & (PAGE_SIZE - 1));
+            int w = bit >> 6;
+            // treat the units after index as set
+            long word = page[w] | ((bit & 63) == 63 ? 0 : -1L << ((bit & 63) + 1));
+            while (word == -1L && --w >= 0) {
+                word = page[w];
+            }
+            if (w >= 0) {
+                return (index & ~(long)(PAGE_SIZE - 1)) + (w << 6) + 63 - Long.numberOfLeadingZeros(~word);
+            }
+            index = ((index >> PAGE_SHIFT) << PAGE_SHIFT) - 1;
+        }
+    }
+
+    /**
+     * @param index A unit
+     * @param direction The direction to prefer if the nearest units on either
+     *        side are equally far: positive for later units, otherwise earlier
+     * @return The nearest unit to index that isn't in the set, index itself
+     *         if it isn't in the set
+     */
+    public long nearestClear(long index, int direction) {
+        if (!contains(index)) {
+            return index;
+        }
+        final long next = nextClear(index);
+        final long previous = previousClear(index);
+        final long after = next - index;
+        final long before = index - previous;
+        if (after == before) {
+            return direction > 0 ? next : previous;
+        }
+        return after < before ? next : previous;
+    }
+
+    /**
+     * @return The index into mKeys of the page, or -1 if it isn't allocated
+     */
+    private int findPage(long key) {
+        int lo = 0, hi = mPageCount - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final long k = mKeys[mid];
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private long[] getOrCreatePage(long key) {
+        int lo = 0, hi = mPageCount - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final long k = mKeys[mid];
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return mPages[mid];
+            }
+        }
+        if (mPageCount == mKeys.length) {
+            long[] keys = new long[mPageCount * 2];
+            long[][] pages = new long[mPageCount * 2][];
+            System.arraycopy(mKeys, 0, keys, 0, mPageCount);
+            System.arraycopy(mPages, 0, pages, 0, mPageCount);
+            mKeys = keys;
+            mPages = pages;
+        }
+        System.arraycopy(mKeys, lo, mKeys, lo + 1, mPageCount - lo);
+        System.arraycopy(mPages, lo, mPages, lo + 1, mPageCount - lo);
+        mKeys[lo] = key;
+        mPages[lo] = new long[PAGE_WORDS];
+        mPageCount++;
+        return mPages[lo];
+    }
+}
@@ -2,143 +2,417 @@ package com.googlecode.android.widgets.DateSlider.labeler;
 
 import java.util.Calendar;
 
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
 
 /**
  * A bunch of static helpers for manipulating dates and times. There are two
  * types of methods -- add*() methods that add a number of units to a time
- * and return the result as a Calendar, and get*() objects that take a
- * Calendar object and a format string and produce the appropriate TimeObject.
+ * and return the resulting time, and get*() methods that take a time and a
+ * LabelFormat and produce the appropriate TimeObject.
+ *
+ * All of the arithmetic is done on local times with {@link CivilTime} and
+ * {@link ZoneOffsets}, so none of these methods allocate a Calendar.
  */
 class Util {
-    public static Calendar addYears(long time, int years) {
-        return add(time, years, Calendar.YEAR);
-    }
-
-    public static Calendar addMonths(long time, int months) {
-        return add(time, months, Calendar.MONTH);
-    }
-
-    public static Calendar addWeeks(long time, int days) {
-        return add(time, days, Calendar.WEEK_OF_YEAR);
-    }
-
-    public static Calendar addDays(long time, int days) {
-        return add(time, days, Calendar.DAY_OF_MONTH);
-    }
-
-    public static Calendar addHours(long time, int hours) {
-        return add(time, hours, Calendar.HOUR_OF_DAY);
-    }
-
-    public static Calendar addMinutes(long time, int minutes) {
-        return add(time, minutes, Calendar.MINUTE);
-    }
-    
-    public static Calendar addMinutes(long time, int minutes, int minInterval) {
-        return add(time, minutes*minInterval, Calendar.MINUTE);
-    }
-
-    public static TimeObject getYear(Calendar c, String formatString) {
-        int year = c.get(Calendar.YEAR);
-        // set calendar to first millisecond of the year
-        c.set(year, 0, 1, 0, 0, 0);
-        c.set(Calendar.MILLISECOND, 0);
-        long startTime = c.getTimeInMillis();
-        // set calendar to last millisecond of the year
-        c.set(year, 11, 31, 23, 59, 59);
-        c.set(Calendar.MILLISECOND, 999);
-        long endTime = c.getTimeInMillis();
-        return new TimeObject(String.format(formatString, c,c), startTime, endTime);
-    }
-
-    public static TimeObject getMonth(Calendar c, String formatString) {
-        int year = c.get(Calendar.YEAR);
-        int month = c.get(Calendar.MONTH);
-        // set calendar to first millisecond of the month
-        c.set(year, month, 1, 0, 0, 0);
-        c.set(Calendar.MILLISECOND, 0);
-        long startTime = c.getTimeInMillis();
-        // set calendar to last millisecond of the month
-        c.set(year, month, c.getActualMaximum(Calendar.DAY_OF_MONTH), 23, 59, 59);
-        c.set(Calendar.MILLISECOND, 999);
-        long endTime = c.getTimeInMillis();
-        return new TimeObject(String.format(formatString,c,c), startTime, endTime);
-    }
-
-    public static TimeObject getDay(Calendar c, String formatString) {
-        int year = c.get(Calendar.YEAR);
-        int month = c.get(Calendar.MONTH);
-        int day = c.get(Calendar.DAY_OF_MONTH);
-        // set calendar to first millisecond of the day
-        c.set(year, month, day, 0, 0, 0);
-        c.set(Calendar.MILLISECOND, 0);
-        long startTime = c.getTimeInMillis();
-        // set calendar to last millisecond of the day
-        c.set(year, month, day, 23, 59, 59);
-        c.set(Calendar.MILLISECOND, 999);
-        long endTime = c.getTimeInMillis();
-        return new TimeObject(String.format(formatString,c,c), startTime, endTime);
-    }
-
-    public static TimeObject getHour(Calendar c, String formatString) {
-        int year = c.get(Calendar.YEAR);
-        int month = c.get(Calendar.MONTH);
-        int day = c.get(Calendar.DAY_OF_MONTH);
-        int hour = c.get(Calendar.HOUR_OF_DAY);
-        // get the first millisecond of that hour
-        c.set(year, month, day, hour, 0, 0);
-        c.set(Calendar.MILLISECOND, 0);
-        long startTime = c.getTimeInMillis();
-        // get the last millisecond of that hour
-        c.set(year, month, day, hour, 59, 59);
-        c.set(Calendar.MILLISECOND, 999);
-        long endTime = c.getTimeInMillis();
-        return new TimeObject(String.format(formatString, c,c), startTime, endTime);
-    }
-
-    public static TimeObject getMinute(Calendar c, String formatString) {
-    	return getMinute(c, formatString, 1);
-    }
-    
-    public static TimeObject getMinute(Calendar c, String formatString, int minInterval) {
-        int year = c.get(Calendar.YEAR);
-        int month = c.get(Calendar.MONTH);
-        int day = c.get(Calendar.DAY_OF_MONTH);
-        int hour = c.get(Calendar.HOUR_OF_DAY);
-        int minute = c.get(Calendar.MINUTE);
-        // get the last millisecond of that minute interval (cap it at 59)
-        c.set(year, month, day, hour, Math.min(59,minute+minInterval-1), 59);
-        c.set(Calendar.MILLISECOND, 999);
-        long endTime = c.getTimeInMillis();
-        // get the first millisecond of that minute interval
-        c.set(year, month, day, hour, minute, 0);
-        c.set(Calendar.MILLISECOND, 0);
-        long startTime = c.getTimeInMillis();
-        return new TimeObject(String.format(formatString, c,c), startTime, endTime);
-    }
-
-    public static TimeObject getTime(Calendar c, String formatString, int minuteInterval) {
-        int year = c.get(Calendar.YEAR);
-        int month = c.get(Calendar.MONTH);
-        int day = c.get(Calendar.DAY_OF_MONTH);
-        int hour = c.get(Calendar.HOUR_OF_DAY);
-        int minute = c.get(Calendar.MINUTE)/minuteInterval*minuteInterval;
-        // get the last millisecond of that 15 minute block
-        c.set(year, month, day, hour, minute+minuteInterval-1, 59);
-        c.set(Calendar.MILLISECOND, 999);
-        long endTime = c.getTimeInMillis();
-        // get the first millisecond of that 15 minute block
-        c.set(year, month, day, hour, minute, 0);
-        c.set(Calendar.MILLISECOND, 0);
-        long startTime = c.getTimeInMillis();
-        return new TimeObject(String.format(formatString, c,c), startTime, endTime);
-    }
-
-    private static Calendar add(long time, int val, int field) {
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(time);
-        c.add(field, val);
-        return c;
+    private static final long DAY = CivilTime.DAY;
+    private static final long HOUR = CivilTime.HOUR;
+    private static final long MINUTE = CivilTime.MINUTE;
+
+    public static long addYears(long time, int years) {
+        return addMonths(time, years * 12);
+    }
+
+    public static long addMonths(long time, int months) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long local = z.toLocal(time);
+        final long days = CivilTime.floorDiv(local, DAY);
+        final int ymd = CivilTime.civilFromDays(days);
+        long month = CivilTime.year(ymd) * 12L + CivilTime.month(ymd) + months;
+        final int year = (int)CivilTime.floorDiv(month, 12);
+        final int m = (int)CivilTime.floorMod(month, 12);
+        // like Calendar.add(), clamp the day to the length of the new month
+        final int day = Math.min(CivilTime.day(ymd), CivilTime.daysInMonth(year, m));
+        final long newDays = CivilTime.daysFromCivil(year, m, day);
+        return z.toUtc(local + (newDays - days) * DAY);
+    }
+
+    public static long addWeeks(long time, int weeks) {
+        return addDays(time, weeks * 7);
+    }
+
+    public static long addDays(long time, int days) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        return z.toUtc(z.toLocal(time) + days * DAY);
+    }
+
+    public static long addHours(long time, int hours) {
+        return time + hours * HOUR;
+    }
+
+    public static long addMinutes(long time, int minutes) {
+        return time + minutes * MINUTE;
+    }
+
+    public static long addMinutes(long time, int minutes, int minInterval) {
+        return addMinutes(time, minutes * minInterval);
+    }
+
+    public static TimeObject getYear(long time, LabelFormat format) {
+        return getYear(time, format, new MutableTimeObject()).toTimeObject();
+    }
+
+    public static MutableTimeObject getYear(long time, LabelFormat format, MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final int year = CivilTime.year(localDate(z, time));
+        long startTime = z.toUtc(CivilTime.daysFromCivil(year, Calendar.JANUARY, 1) * DAY);
+        long endTime = z.toUtc(CivilTime.daysFromCivil(year + 1, Calendar.JANUARY, 1) * DAY - 1);
+        return out.set(format, startTime, endTime);
+    }
+
+    public static TimeObject getMonth(long time, LabelFormat format) {
+        return getMonth(time, format, new MutableTimeObject()).toTimeObject();
+    }
+
+    public static MutableTimeObject getMonth(long time, LabelFormat format, MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final int ymd = localDate(z, time);
+        final int year = CivilTime.year(ymd);
+        final int month = CivilTime.month(ymd);
+        final long first = CivilTime.daysFromCivil(year, month, 1);
+        long startTime = z.toUtc(first * DAY);
+        long endTime = z.toUtc((first + CivilTime.daysInMonth(year, month)) * DAY - 1);
+        return out.set(format, startTime, endTime);
+    }
+
+    public static TimeObject getDay(long time, LabelFormat format) {
+        return getDay(time, format, new MutableTimeObject()).toTimeObject();
+    }
+
+    public static MutableTimeObject getDay(long time, LabelFormat format, MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long day = CivilTime.floorDiv(z.toLocal(time), DAY);
+        long startTime = z.toUtc(day * DAY);
+        long endTime = z.toUtc((day + 1) * DAY - 1);
+        return out.set(format, startTime, endTime);
+    }
+
+    public static TimeObject getHour(long time, LabelFormat format) {
+        return getHour(time, format, new MutableTimeObject()).toTimeObject();
+    }
+
+    public static MutableTimeObject getHour(long time, LabelFormat format, MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long hour = CivilTime.floorDiv(z.toLocal(time), HOUR);
+        long startTime = z.toUtc(hour * HOUR);
+        long endTime = z.toUtc((hour + 1) * HOUR - 1);
+        return out.set(format, startTime, endTime);
+    }
+
+    public static TimeObject getMinute(long time, LabelFormat format) {
+        return getMinute(time, format, 1);
+    }
+
+    /**
+     * Gets the minute interval containing the time. Intervals start at multiples
+     * of minInterval within the hour, and the last interval of the hour is capped
+     * at minute 59.
+     */
+    public static TimeObject getMinute(long time, LabelFormat format, int minInterval) {
+        return getMinute(time, format, minInterval, new MutableTimeObject()).toTimeObject();
+    }
+
+    public static MutableTimeObject getMinute(long time, LabelFormat format, int minInterval,
+            MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long local = z.toLocal(time);
+        final long hourStart = CivilTime.floorDiv(local, HOUR) * HOUR;
+        int minute = (int)((local - hourStart) / MINUTE);
+        minute -= minute % minInterval;
+        long startTime = z.toUtc(hourStart + minute * MINUTE);
+        long endTime = z.toUtc(hourStart + (Math.min(59, minute + minInterval - 1) + 1) * MINUTE - 1);
+        return out.set(format, startTime, endTime);
+    }
+
+    /**
+     * Gets the minuteInterval-minute block containing the time.
+     */
+    public static TimeObject getTime(long time, LabelFormat format, int minuteInterval) {
+        return getTime(time, format, minuteInterval, new MutableTimeObject()).toTimeObject();
+    }
+
+    public static MutableTimeObject getTime(long time, LabelFormat format, int minuteInterval,
+            MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long local = z.toLocal(time);
+        final long hourStart = CivilTime.floorDiv(local, HOUR) * HOUR;
+        final int minute = (int)((local - hourStart) / MINUTE) / minuteInterval * minuteInterval;
+        final long localStart = hourStart + minute * MINUTE;
+        long startTime = z.toUtc(localStart);
+        long endTime = z.toUtc(localStart + minuteInterval * MINUTE - 1);
+        return out.set(format, startTime, endTime);
+    }
+
+    /*
+     * The fill*() methods implement Labeler.fill() for the corresponding get*()
+     * method: out[off + k] is set to the unit first + k units away from the unit
+     * containing the time. Units are numbered by their local field values (see
+     * unitIndex()), so stepping is an increment, and a unit that a time zone
+     * transition skips altogether (such as 2:00-2:59 on the day clocks go forward,
+     * or 30 December 2011 in Samoa) is stepped over, since no time would ever
+     * be labeled with it.
+     */
+
+    static final int YEARS = 0;
+    static final int MONTHS = 1;
+    static final int DAYS = 2;
+    static final int HOURS = 3;
+    static final int MINUTES = 4;
+
+    public static void fillYears(long time, int first, LabelFormat format,
+            MutableTimeObject[] out, int off, int count) {
+        fillUnits(YEARS, 1, time, first, format, out, off, count);
+    }
+
+    public static void fillMonths(long time, int first, LabelFormat format,
+            MutableTimeObject[] out, int off, int count) {
+        fillUnits(MONTHS, 1, time, first, format, out, off, count);
+    }
+
+    public static void fillDays(long time, int first, LabelFormat format,
+            MutableTimeObject[] out, int off, int count) {
+        fillUnits(DAYS, 1, time, first, format, out, off, count);
+    }
+
+    public static void fillHours(long time, int first, LabelFormat format,
+            MutableTimeObject[] out, int off, int count) {
+        fillUnits(HOURS, 1, time, first, format, out, off, count);
+    }
+
+    public static void fillMinutes(long time, int first, LabelFormat format, int minInterval,
+            MutableTimeObject[] out, int off, int count) {
+        fillUnits(MINUTES, minInterval, time, first, format, out, off, count);
+    }
+
+    /**
+     * Fills minuteInterval-minute units as returned by
+     * {@link #getTime(long, LabelFormat, int)}. These don't restart at the top of
+     * the hour, so rather than being numbered they are stepped through the way
+     * TimeLabeler.add() does it, by adding the interval to the end of a unit.
+     */
+    public static void fillTimes(long time, int first, LabelFormat format, int minuteInterval,
+            MutableTimeObject[] out, int off, int count) {
+        if (count <= 0) {
+            return;
+        }
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long interval = minuteInterval * MINUTE;
+        int anchor = off - first;
+        long local = timeUnitStart(z.toLocal(time), minuteInterval);
+        for (; anchor < off; anchor++) {
+            local = nextTimeUnit(z, local, interval, minuteInterval);
+        }
+        for (; anchor >= off + count; anchor--) {
+            local = previousTimeUnit(z, local, interval, minuteInterval);
+        }
+        final long anchorLocal = local;
+        for (int k = anchor; k < off + count; k++) {
+            out[k].set(format, z.toUtc(local), z.toUtc(local + interval - 1));
+            local = nextTimeUnit(z, local, interval, minuteInterval);
+        }
+        local = anchorLocal;
+        for (int k = anchor - 1; k >= off; k--) {
+            local = previousTimeUnit(z, local, interval, minuteInterval);
+            out[k].set(format, z.toUtc(local), z.toUtc(local + interval - 1));
+        }
+    }
+
+    private static long nextTimeUnit(ZoneOffsets z, long local, long interval, int minuteInterval) {
+        return timeUnitStart(z.toLocal(z.toUtc(local + interval - 1) + interval), minuteInterval);
+    }
+
+    private static long previousTimeUnit(ZoneOffsets z, long local, long interval, int minuteInterval) {
+        return timeUnitStart(z.toLocal(z.toUtc(local + interval - 1) - interval), minuteInterval);
+    }
+
+    /**
+     * @return The local start time of the {@link #getTime(long, LabelFormat, int)} unit
+     *         containing a local time
+     */
+    private static long timeUnitStart(long local, int minuteInterval) {
+        final long hourStart = CivilTime.floorDiv(local, HOUR) * HOUR;
+        final int minute = (int)((local - hourStart) / MINUTE) / minuteInterval * minuteInterval;
+        return hourStart + minute * MINUTE;
+    }
+
+    /**
+     * Fills numbered units, walking outwards from the unit containing the time.
+     */
+    private static void fillUnits(int unit, int interval, long time, int first, LabelFormat format,
+            MutableTimeObject[] out, int off, int count) {
+        if (count <= 0) {
+            return;
+        }
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        long index = unitIndex(unit, interval, z.toLocal(time));
+        int anchor = off - first;
+        for (; anchor < off; anchor++) {
+            index = nextUnit(z, unit, interval, index);
+        }
+        for (; anchor >= off + count; anchor--) {
+            index = previousUnit(z, unit, interval, index);
+        }
+        long i = index;
+        for (int k = anchor; k < off + count; k++) {
+            final long nextStart = unitStart(unit, interval, i + 1);
+            out[k].set(format, z.toUtc(unitStart(unit, interval, i)), z.toUtc(nextStart - 1));
+            i = nextUnit(z, unit, interval, i);
+        }
+        i = index;
+        for (int k = anchor - 1; k >= off; k--) {
+            i = previousUnit(z, unit, interval, i);
+            final long nextStart = unitStart(unit, interval, i + 1);
+            out[k].set(format, z.toUtc(unitStart(unit, interval, i)), z.toUtc(nextStart - 1));
+        }
+    }
+
+    private static long nextUnit(ZoneOffsets z, int unit, int interval, long index) {
+        do {
+            index++;
+        } while (isSkipped(z, unit, interval, index));
+        return index;
+    }
+
+    private static long previousUnit(ZoneOffsets z, int unit, int interval, long index) {
+        do {
+            index--;
+        } while (isSkipped(z, unit, interval, index));
+        return index;
+    }
+
+    /**
+     * @return true if no time falls within the unit, because a time zone
+     *         transition skips over the whole of it
+     */
+    private static boolean isSkipped(ZoneOffsets z, int unit, int interval, long index) {
+        final long start = unitStart(unit, interval, index);
+        if (z.toLocal(z.toUtc(start)) == start) {
+            return false;
+        }
+        // a transition skips the start; see whether it also skips the end
+        final long end = unitStart(unit, interval, index + 1) - 1;
+        return z.toLocal(z.toUtc(end)) != end;
+    }
+
+    /**
+     * Implements Labeler.getUnitIndex() for the units filled by the fill*() methods.
+     *
+     * @param unit YEARS, MONTHS, DAYS, HOURS or MINUTES
+     * @param interval The length of a MINUTES unit, in minutes
+     * @return The number of the unit containing the time
+     */
+    public static long getUnitIndex(int unit, int interval, long time) {
+        return unitIndex(unit, interval, ZoneOffsets.getDefault().toLocal(time));
+    }
+
+    /**
+     * Implements Labeler.getUnitTime(), the inverse of {@link #getUnitIndex(int, int, long)}.
+     *
+     * @return The start time of the unit with the number
+     */
+    public static long getUnitTime(int unit, int interval, long index) {
+        return ZoneOffsets.getDefault().toUtc(unitStart(unit, interval, index));
+    }
+
+    /**
+     * Numbers units by their local fields: years by the year, months by
+     * year * 12 + month, days and hours by the number of them since the epoch,
+     * and minute intervals (which restart at the top of every hour) by
+     * hour * intervals per hour + interval within the hour.
+     *
+     * @return The number of the unit containing a local time
+     */
+    private static long unitIndex(int unit, int interval, long local) {
+        switch (unit) {
+        case YEARS:
+            return CivilTime.year(CivilTime.civilFromDays(CivilTime.floorDiv(local, DAY)));
+        case MONTHS:
+            final int ymd = CivilTime.civilFromDays(CivilTime.floorDiv(local, DAY));
+            return CivilTime.year(ymd) * 12L + CivilTime.month(ymd);
+        case DAYS:
+            return CivilTime.floorDiv(local, DAY);
+        case HOURS:
+            return CivilTime.floorDiv(local, HOUR);
+        default:
+            final long hour = CivilTime.floorDiv(local, HOUR);
+            return hour * intervalsPerHour(interval) + (local - hour * HOUR) / MINUTE / interval;
+        }
+    }
+
+    /**
+     * @return The local start time of a unit numbered by {@link #unitIndex(int, int, long)}
+     */
+    private static long unitStart(int unit, int interval, long index) {
+        switch (unit) {
+        case YEARS:
+            return CivilTime.daysFromCivil((int)index, Calendar.JANUARY, 1) * DAY;
+        case MONTHS:
+            return CivilTime.daysFromCivil((int)CivilTime.floorDiv(index, 12),
+                    (int)CivilTime.floorMod(index, 12), 1) * DAY;
+        case DAYS:
+            return index * DAY;
+        case HOURS:
+            return index * HOUR;
+        default:
+            final int perHour = intervalsPerHour(interval);
+            final long hour = CivilTime.floorDiv(index, perHour);
+            return hour * HOUR + (index - hour * perHour) * interval * MINUTE;
+        }
+    }
+
+    private static int intervalsPerHour(int minInterval) {
+        return (60 + minInterval - 1) / minInterval;
+    }
+
+    /*
+     * The *Start() methods return the start time of the TimeObject that the
+     * corresponding get*() method would return, without building it.
+     */
+
+    public static long getYearStart(long time) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final int year = CivilTime.year(localDate(z, time));
+        return z.toUtc(CivilTime.daysFromCivil(year, Calendar.JANUARY, 1) * DAY);
+    }
+
+    public static long getMonthStart(long time) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final int ymd = localDate(z, time);
+        return z.toUtc(CivilTime.daysFromCivil(CivilTime.year(ymd), CivilTime.month(ymd), 1) * DAY);
+    }
+
+    public static long getDayStart(long time) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        return z.toUtc(CivilTime.floorDiv(z.toLocal(time), DAY) * DAY);
+    }
+
+    public static long getHourStart(long time) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        return z.toUtc(CivilTime.floorDiv(z.toLocal(time), HOUR) * HOUR);
+    }
+
+    public static long getMinuteStart(long time, int minInterval) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long local = z.toLocal(time);
+        final long hourStart = CivilTime.floorDiv(local, HOUR) * HOUR;
+        final int minute = (int)((local - hourStart) / MINUTE);
+        return z.toUtc(hourStart + (minute - minute % minInterval) * MINUTE);
+    }
+
+    /**
+     * @return The packed civil date (see {@link CivilTime#pack(int, int, int)}) of the time
+     */
+    static int localDate(ZoneOffsets z, long time) {
+        return CivilTime.civilFromDays(CivilTime.floorDiv(z.toLocal(time), DAY));
     }
 }
@@ -1,52 +1,149 @@
 package com.googlecode.android.widgets.DateSlider.labeler;
 
-import java.util.Calendar;
+import java.util.Locale;
 
 import android.content.Context;
 import android.graphics.Typeface;
 import android.util.TypedValue;
 import android.view.Gravity;
 
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
 import com.googlecode.android.widgets.DateSlider.timeview.TimeTextView;
 import com.googlecode.android.widgets.DateSlider.timeview.TimeView;
 
 /**
- * A customized Labeler that displays weeks using a CustomTimeTextView
+ * A customized Labeler that displays weeks using a CustomTimeTextView. The
+ * label is the format string applied to the week of the year.
+ *
+ * Weeks follow the default locale's first day of the week and week numbering
+ * as of when the labeler is created, or other {@link WeekRules} set with
+ * {@link #setWeekRules(WeekRules)}; see also {@link IsoWeekLabeler}.
  */
 public class WeekLabeler extends Labeler {
     private final String mFormatString;
+    private WeekRules mRules;
+    /**
+     * The labels of weeks 1 to 53, formatted as they're needed, and the
+     * locale that they were formatted in
+     */
+    private volatile CharSequence[] mLabels;
+    private volatile Locale mLabelLocale;
 
     public WeekLabeler(String formatString) {
         super(120, 60);
         mFormatString = formatString;
+        mRules = WeekRules.forLocale(Locale.getDefault());
+    }
+
+    /**
+     * Changes the week numbering scheme, e.g. to {@link WeekRules#ISO}.
+     *
+     * @param rules The week rules
+     */
+    public void setWeekRules(WeekRules rules) {
+        if (!rules.equals(mRules)) {
+            // the cached TimeObjects are the old weeks
+            clearCache();
+        }
+        mRules = rules;
+    }
+
+    public WeekRules getWeekRules() {
+        return mRules;
     }
 
     @Override
     public TimeObject add(long time, int val) {
-        return timeObjectfromCalendar(Util.addWeeks(time, val));
+        return getElem(Util.addWeeks(time, val));
+    }
+
+    @Override
+    public void add(long time, int val, MutableTimeObject out) {
+        getElem(Util.addWeeks(time, val), out);
+    }
+
+    @Override
+    public void getElem(long time, MutableTimeObject out) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        setWeek(z, mRules.weekStart(CivilTime.floorDiv(z.toLocal(time), CivilTime.DAY)), out);
+    }
+
+    @Override
+    public void fill(long time, int first, MutableTimeObject[] out, int off, int count) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        long firstDay = mRules.weekStart(CivilTime.floorDiv(z.toLocal(time), CivilTime.DAY)) + 7L * first;
+        for (int k = 0; k < count; k++) {
+            setWeek(z, firstDay, out[off + k]);
+            firstDay += 7;
+        }
     }
 
     /**
-     * We implement this as custom code rather than a method in Util because there
-     * is no format string that shows the week of the year as an integer, so we just
-     * format the week directly rather than extracting it from a Calendar object.
+     * Weeks are numbered from the one containing 1 January 1970
      */
     @Override
-    protected TimeObject timeObjectfromCalendar(Calendar c) {
-        int week = c.get(Calendar.WEEK_OF_YEAR);
-        int day_of_week = c.get(Calendar.DAY_OF_WEEK)-1;
-        // set calendar to first millisecond of the week
-        c.add(Calendar.DAY_OF_MONTH,-day_of_week);
-        c.set(Calendar.HOUR_OF_DAY,0);c.set(Calendar.MINUTE,0);c.set(Calendar.SECOND,0);
-        c.set(Calendar.MILLISECOND, 0);
-        long startTime = c.getTimeInMillis();
-        // set calendar to last millisecond of the week
-        c.add(Calendar.DAY_OF_WEEK, 6);
-        c.set(Calendar.HOUR_OF_DAY,23);c.set(Calendar.MINUTE,59);c.set(Calendar.SECOND,59);
-        c.set(Calendar.MILLISECOND, 999);
-        long endTime = c.getTimeInMillis();
-        return new TimeObject(String.format(mFormatString,week), startTime, endTime);
+    public boolean hasUnitIndex() {
+        return true;
+    }
+
+    @Override
+    public long getUnitIndex(long time) {
+        final long day = CivilTime.floorDiv(ZoneOffsets.getDefault().toLocal(time), CivilTime.DAY);
+        return (mRules.weekStart(day) - mRules.weekStart(0)) / 7;
+    }
+
+    @Override
+    public long getUnitTime(long index) {
+        return ZoneOffsets.getDefault().toUtc((mRules.weekStart(0) + index * 7) * CivilTime.DAY);
+    }
+
+    @Override
+    protected long getUnitStart(long time) {
+        final ZoneOffsets z = ZoneOffsets.getDefault();
+        final long day = CivilTime.floorDiv(z.toLocal(time), CivilTime.DAY);
+        return z.toUtc(mRules.weekStart(day) * CivilTime.DAY);
+    }
+
+    @Override
+    protected TimeObject timeObjectfromTime(long time) {
+        MutableTimeObject out = new MutableTimeObject();
+        getElem(time, out);
+        return out.toTimeObject();
+    }
+
+    /**
+     * @param firstDay The day number of the first day of a week
+     */
+    private void setWeek(ZoneOffsets z, long firstDay, MutableTimeObject out) {
+        final long startTime = z.toUtc(firstDay * CivilTime.DAY);
+        final long endTime = z.toUtc((firstDay + 7) * CivilTime.DAY - 1);
+        out.set(getLabel(mRules.weekOfYear(firstDay)), startTime, endTime);
+    }
+
+    /**
+     * We implement this as custom code rather than a LabelFormat because there
+     * is no format string that shows the week of the year as an integer, so we just
+     * format the week number directly. The label only depends on the number, so
+     * each one is formatted once.
+     *
+     * @param week The week of the year
+     * @return The label of the week
+     */
+    private CharSequence getLabel(int week) {
+        CharSequence[] labels = mLabels;
+        final Locale locale = Locale.getDefault();
+        if (labels == null || !locale.equals(mLabelLocale)) {
+            labels = new CharSequence[54];
+            mLabels = labels;
+            mLabelLocale = locale;
+        }
+        CharSequence label = labels[week];
+        if (label == null) {
+            label = LabelFormat.formatParts(mFormatString, week);
+            labels[week] = label;
+        }
+        return label;
     }
 
     /**
@@ -0,0 +1,161 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * A week numbering scheme: the day weeks start on, and the minimal number of
+ * days of a year that its first week must contain, as in Calendar's
+ * getFirstDayOfWeek() and getMinimalDaysInFirstWeek(). {@link #ISO} is the
+ * ISO-8601 scheme, and {@link #forLocale(Locale)} returns a locale's.
+ *
+ * Everything is computed from day numbers (see {@link CivilTime}) without a
+ * Calendar. The day on which week 1 of each year starts is precomputed for
+ * the years from {@value #MIN_YEAR} to {@value #MAX_YEAR}, so finding the week
+ * of a day in those years is a division and a couple of array lookups.
+ */
+public final class WeekRules {
+    /**
+     * The range of years whose first week is precomputed
+     */
+    private static final int MIN_YEAR = 1800;
+    private static final int MAX_YEAR = 2200;
+
+    /**
+     * Weeks start on Monday, and week 1 is the one containing the first Thursday
+     */
+    public static final WeekRules ISO = new WeekRules(Calendar.MONDAY, 4);
+
+    private static final HashMap<Locale, WeekRules> sLocaleRules = new HashMap<Locale, WeekRules>();
+
+    private final int mFirstDayOfWeek;
+    private final int mMinimalDays;
+    /**
+     * The day number of the first day of week 1 of each year from MIN_YEAR to
+     * MAX_YEAR + 1
+     */
+    private final int[] mFirstWeeks;
+
+    /**
+     * @param firstDayOfWeek The first day of the week, as one of the
+     *        Calendar.SUNDAY..SATURDAY constants
+     * @param minimalDays The minimal number of days of the year in its first week, 1 to 7
+     */
+    public WeekRules(int firstDayOfWeek, int minimalDays) {
+        if (firstDayOfWeek < Calendar.SUNDAY || firstDayOfWeek > Calendar.SATURDAY) {
+            throw new IllegalArgumentException("Invalid first day of week: " + firstDayOfWeek);
+        }
+        if (minimalDays < 1 || minimalDays > 7) {
+            throw new IllegalArgumentException("Invalid minimal days in first week: " + minimalDays);
+        }
+        mFirstDayOfWeek = firstDayOfWeek;
+        mMinimalDays = minimalDays;
+        mFirstWeeks = new int[MAX_YEAR - MIN_YEAR + 2];
+        for (int year = MIN_YEAR; year <= MAX_YEAR + 1; year++) {
+            mFirstWeeks[year - MIN_YEAR] = (int)computeFirstWeek(year);
+        }
+    }
+
+    /**
+     * @param locale A locale
+     * @return The shared week rules of the locale
+     */
+    public static WeekRules forLocale(Locale locale) {
+        synchronized (sLocaleRules) {
+            WeekRules rules = sLocaleRules.get(locale);
+            if (rules == null) {
+                Calendar c = Calendar.getInstance(locale);
+                rules = new WeekRules(c.getFirstDayOfWeek(), c.getMinimalDaysInFirstWeek());
+                if (rules.equals(ISO)) {
+                    rules = ISO;
+                }
+                sLocaleRules.put(locale, rules);
+            }
+            return rules;
+        }
+    }
+
+    public int getFirstDayOfWeek() {
+        return mFirstDayOfWeek;
+    }
+
+    public int getMinimalDaysInFirstWeek() {
+        return mMinimalDays;
+    }
+
+    /**
+     * @param day A day number
+     * @return The day number of the first day of its week
+     */
+    public long weekStart(long day) {
+        return day - CivilTime.floorMod(CivilTime.dayOfWeek(day) - mFirstDayOfWeek, 7);
+    }
+
+    /**
+     * @param day A day number
+     * @return The week of the year of the day, as Calendar.WEEK_OF_YEAR
+     */
+    public int weekOfYear(long day) {
+        return (int)((day - firstWeek(weekYear(day))) / 7) + 1;
+    }
+
+    /**
+     * The year that the week of a day is numbered in. This differs from the
+     * calendar year for days at either end of a year whose week belongs to
+     * the previous or next year.
+     *
+     * @param day A day number
+     * @return The week-based year of the day
+     */
+    public int weekYear(long day) {
+        // estimate the year from the mean length of a year, then correct it
+        int year = (int)CivilTime.floorDiv(day * 400, 146097) + 1970;
+        while (day < firstWeek(year)) {
+            year--;
+        }
+        while (day >= firstWeek(year + 1)) {
+            year++;
+        }
+        return year;
+    }
+
+    /**
+     * @param year A week-based year
+     * @return The number of weeks in the year, 52 or 53
+     */
+    public int weeksInYear(int year) {
+        return (int)((firstWeek(year + 1) - firstWeek(year)) / 7);
+    }
+
+    /**
+     * @param year A week-based year
+     * @return The day number of the first day of week 1 of the year
+     */
+    public long firstWeek(int year) {
+        if (year >= MIN_YEAR && year <= MAX_YEAR + 1) {
+            return mFirstWeeks[year - MIN_YEAR];
+        }
+        return computeFirstWeek(year);
+    }
+
+    private long computeFirstWeek(int year) {
+        final long jan1 = CivilTime.daysFromCivil(year, Calendar.JANUARY, 1);
+        final long start = weekStart(jan1);
+        return jan1 - start + mMinimalDays <= 7 ? start : start + 7;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof WeekRules)) {
+            return false;
+        }
+        WeekRules other = (WeekRules)o;
+        return mFirstDayOfWeek == other.mFirstDayOfWeek && mMinimalDays == other.mMinimalDays;
+    }
+
+    @Override
+    public int hashCode() {
+        return mFirstDayOfWeek * 8 + mMinimalDays;
+    }
+}
@@ -0,0 +1,51 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * The days of the weekend of each locale's country, which Calendar doesn't
+ * know about. The countries whose weekend isn't Saturday and Sunday are
+ * listed explicitly, following the CLDR week data.
+ */
+final class WeekendDays {
+    private static final int SAT_SUN = bit(Calendar.SATURDAY) | bit(Calendar.SUNDAY);
+    private static final int FRI_SAT = bit(Calendar.FRIDAY) | bit(Calendar.SATURDAY);
+    private static final int THU_FRI = bit(Calendar.THURSDAY) | bit(Calendar.FRIDAY);
+    private static final int FRI = bit(Calendar.FRIDAY);
+    private static final int SUN = bit(Calendar.SUNDAY);
+
+    private static final String[] FRI_SAT_COUNTRIES = {
+        "BH", "DZ", "EG", "IL", "IQ", "JO", "KW", "LY", "OM", "QA", "SA", "SD", "SY", "YE"
+    };
+
+    private WeekendDays() {
+    }
+
+    /**
+     * @param locale A locale
+     * @return The days of the weekend in the locale's country, as a mask with
+     *         bit 1 << d set for each weekend day d of the Calendar.SUNDAY..SATURDAY
+     *         constants
+     */
+    static int forLocale(Locale locale) {
+        final String country = locale.getCountry();
+        if ("AF".equals(country)) {
+            return THU_FRI;
+        } else if ("IR".equals(country)) {
+            return FRI;
+        } else if ("IN".equals(country) || "UG".equals(country)) {
+            return SUN;
+        }
+        for (String c : FRI_SAT_COUNTRIES) {
+            if (c.equals(country)) {
+                return FRI_SAT;
+            }
+        }
+        return SAT_SUN;
+    }
+
+    static int bit(int dayOfWeek) {
+        return 1 << dayOfWeek;
+    }
+}
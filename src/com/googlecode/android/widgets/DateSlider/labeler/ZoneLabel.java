@@ -0,0 +1,54 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.TimeZone;
+
+/**
+ * A format string applied in a time zone other than the default one, used
+ * for the secondary labels of a labeler (see
+ * {@link Labeler#setSecondaryLabel(String, TimeZone)}). It shares the
+ * LabelFormat of the format string and the offset table of the zone with
+ * all other users, so rendering a secondary label costs the same as
+ * rendering the primary one.
+ */
+public final class ZoneLabel {
+    private final LabelFormat mFormat;
+    private final ZoneOffsets mZone;
+
+    /**
+     * @param formatString A format string whose arguments are all the time to format
+     * @param zone The time zone to format times in
+     */
+    public ZoneLabel(String formatString, TimeZone zone) {
+        mFormat = LabelFormat.forFormat(formatString);
+        mZone = ZoneOffsets.forZone(zone);
+    }
+
+    public LabelFormat getFormat() {
+        return mFormat;
+    }
+
+    public TimeZone getTimeZone() {
+        return mZone.getTimeZone();
+    }
+
+    /**
+     * @param time The time
+     * @return The label of the time in this zone
+     */
+    public CharSequence format(long time) {
+        return mFormat.format(time, mZone);
+    }
+
+    /**
+     * Renders the label of a time in this zone into a buffer.
+     *
+     * @param time The time
+     * @param dest The buffer to render into
+     * @return The length of the label. If this is greater than the length of
+     *         dest, only part of the label was rendered, and it should be
+     *         rendered again into a buffer of at least that length.
+     */
+    public int render(long time, char[] dest) {
+        return mFormat.render(time, mZone, dest);
+    }
+}
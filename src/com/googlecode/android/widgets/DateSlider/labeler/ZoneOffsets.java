@@ -0,0 +1,374 @@
+package com.googlecode.android.widgets.DateSlider.labeler;
+
+import java.util.HashMap;
+import java.util.TimeZone;
+
+/**
+ * Converts between UTC times and local (wall clock) times for a single
+ * time zone. A local time is expressed as milliseconds since the local
+ * epoch, so local day and hour boundaries can be found by plain division.
+ *
+ * TimeZone doesn't expose its offset transitions, so they are discovered
+ * by sampling the zone and stored in sorted primitive arrays. Looking up
+ * an offset is then a binary search (with a fast path for the interval
+ * found by the previous lookup). The table is built lazily, a block of
+ * years at a time, around the times that are actually looked up. A lookup
+ * far from the known transitions only scans its own block, which is kept as
+ * a separate table, rather than every year in between.
+ *
+ * Instances are shared by all labelers through {@link #forZone(TimeZone)}.
+ * Calendar.getInstance() clones the default TimeZone on every call, so
+ * the default zone is cached here and only refreshed by
+ * {@link #refreshDefault()}.
+ */
+final class ZoneOffsets {
+    /**
+     * The bounds of the offsets that any time zone uses
+     */
+    private static final long MAX_OFFSET = 14 * CivilTime.HOUR;
+    private static final long MIN_OFFSET = -12 * CivilTime.HOUR;
+    /**
+     * The span of time that is added to the table when a lookup falls outside
+     * of it (about 8 years)
+     */
+    private static final long BLOCK = 2922 * CivilTime.DAY;
+    /**
+     * The sampling interval used to find transitions. Zones don't change their
+     * offset twice within a day, so bisecting between samples finds them all.
+     */
+    private static final long SAMPLE = CivilTime.DAY;
+    /**
+     * The most separate tables that are kept for one zone
+     */
+    private static final int MAX_TABLES = 8;
+
+    private static final HashMap<String, ZoneOffsets> sZones = new HashMap<String, ZoneOffsets>();
+    private static volatile ZoneOffsets sDefault;
+
+    private final TimeZone mZone;
+    /**
+     * The table of the last lookup
+     */
+    private volatile Table mTable;
+    /**
+     * The disjoint tables that have been scanned, in order of time. Only
+     * accessed while synchronized on this.
+     */
+    private Table[] mTables = new Table[0];
+    /**
+     * The index into the table of the interval containing the last lookup. This
+     * is only a hint and is validated before use, so it needn't be synchronized.
+     */
+    private int mLastHit;
+
+    /**
+     * An immutable snapshot of the known transitions. offsets[i] is in effect
+     * from transitions[i-1] (inclusive) to transitions[i] (exclusive), so
+     * offsets has one more element than transitions.
+     */
+    private static final class Table {
+        final long from, to;
+        final long[] transitions;
+        final int[] offsets;
+
+        Table(long from, long to, long[] transitions, int[] offsets) {
+            this.from = from;
+            this.to = to;
+            this.transitions = transitions;
+            this.offsets = offsets;
+        }
+
+        /**
+         * The last table of the time line also covers Long.MAX_VALUE
+         */
+        boolean contains(long utc) {
+            return utc >= from && (utc < to || to == Long.MAX_VALUE);
+        }
+    }
+
+    private ZoneOffsets(TimeZone zone) {
+        mZone = zone;
+    }
+
+    /**
+     * @param zone A time zone
+     * @return The shared offsets of the time zone with the same ID
+     */
+    public static ZoneOffsets forZone(TimeZone zone) {
+        synchronized (sZones) {
+            ZoneOffsets z = sZones.get(zone.getID());
+            if (z == null) {
+                z = new ZoneOffsets((TimeZone)zone.clone());
+                sZones.put(zone.getID(), z);
+            }
+            return z;
+        }
+    }
+
+    /**
+     * @return The offsets of the default time zone as of the last
+     *         call to {@link #refreshDefault()}
+     */
+    public static ZoneOffsets getDefault() {
+        ZoneOffsets z = sDefault;
+        if (z == null) {
+            z = refreshDefault();
+        }
+        return z;
+    }
+
+    /**
+     * Re-reads the default time zone, in case it has changed since it was cached.
+     *
+     * @return The offsets of the current default time zone
+     */
+    public static ZoneOffsets refreshDefault() {
+        TimeZone zone = TimeZone.getDefault();
+        ZoneOffsets z = sDefault;
+        if (z == null || !z.mZone.getID().equals(zone.getID())) {
+            z = forZone(zone);
+            sDefault = z;
+        }
+        return z;
+    }
+
+    public TimeZone getTimeZone() {
+        return mZone;
+    }
+
+    /**
+     * @param utc A UTC time
+     * @return The offset from UTC to local time at that instant
+     */
+    public int getOffset(long utc) {
+        Table t = mTable;
+        if (t == null || !t.contains(utc)) {
+            t = extend(utc);
+        }
+        final long[] transitions = t.transitions;
+        // most lookups fall in the same interval as the previous one
+        final int last = mLastHit;
+        if (last <= transitions.length
+                && (last == 0 || transitions[last - 1] <= utc)
+                && (last == transitions.length || utc < transitions[last])) {
+            return t.offsets[last];
+        }
+        int lo = 0, hi = transitions.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (transitions[mid] <= utc) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        mLastHit = lo;
+        return t.offsets[lo];
+    }
+
+    public long toLocal(long utc) {
+        return utc + getOffset(utc);
+    }
+
+    /**
+     * Converts a local time back to UTC. This resolves local times the same way
+     * a lenient Calendar does: a local time that falls in a gap is interpreted
+     * with the offset from before the transition (pushing it forward), and an
+     * ambiguous local time resolves to the later of the two instants.
+     *
+     * @param local A local time
+     * @return The corresponding UTC time
+     */
+    public long toUtc(long local) {
+        // every UTC time that can display as "local" lies within this window
+        final int before = getOffset(plus(local, -MAX_OFFSET));
+        final int after = getOffset(plus(local, -MIN_OFFSET));
+        if (before == after || getOffset(local - after) == after) {
+            return local - after;
+        }
+        return local - before;
+    }
+
+    /**
+     * Like {@link #toUtc(long)}, except that a local time that falls in a gap
+     * resolves to the instant at which the gap ends, i.e. the first instant
+     * whose local time is later than it.
+     *
+     * @param local A local time
+     * @return The corresponding UTC time
+     */
+    public long toUtcCeiling(long local) {
+        final long utc = toUtc(local);
+        if (toLocal(utc) == local) {
+            return utc;
+        }
+        // there is only one transition within a day, so local time increases
+        // across the window; bisect to its first instant after the gap
+        long lo = plus(local, -MAX_OFFSET), hi = utc;
+        while (hi - lo > 1) {
+            final long mid = lo + (hi - lo) / 2;
+            if (toLocal(mid) < local) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    /**
+     * Finds or scans the table that covers the specified time. A time within
+     * a block of a known table grows that table; a time further away gets a
+     * table of its own block.
+     */
+    private synchronized Table extend(long utc) {
+        Table[] tables = mTables;
+        // the first table that starts after the time
+        int i = 0;
+        while (i < tables.length && tables[i].from <= utc) {
+            i++;
+        }
+        final Table lower = i > 0 ? tables[i - 1] : null;
+        final Table upper = i < tables.length ? tables[i] : null;
+        if (lower != null && lower.contains(utc)) {
+            mTable = lower;
+            return lower;
+        }
+        final long q = CivilTime.floorDiv(utc, BLOCK);
+        final long from = q < Long.MIN_VALUE / BLOCK ? Long.MIN_VALUE : q * BLOCK;
+        final long to = q >= Long.MAX_VALUE / BLOCK ? Long.MAX_VALUE : (q + 1) * BLOCK;
+        Table t;
+        if (lower != null && plus(lower.to, BLOCK) >= from) {
+            t = merge(lower, scan(lower.to, to));
+            tables = remove(tables, i - 1);
+        } else if (upper != null && plus(to, BLOCK) >= upper.from) {
+            t = merge(scan(from, upper.from), upper);
+            tables = remove(tables, i);
+        } else {
+            t = scan(from, to);
+        }
+        // join the new table with a neighbour that it now touches
+        for (int k = 0; k < tables.length; k++) {
+            if (tables[k].to == t.from) {
+                t = merge(tables[k], t);
+                tables = remove(tables, k--);
+            } else if (t.to == tables[k].from) {
+                t = merge(t, tables[k]);
+                tables = remove(tables, k--);
+            }
+        }
+        if (tables.length == MAX_TABLES) {
+            // forget the table furthest from this lookup
+            int furthest = 0;
+            long distance = -1;
+            for (int k = 0; k < tables.length; k++) {
+                final long d = tables[k].to <= t.from
+                        ? plus(t.from, -tables[k].to) : plus(tables[k].from, -t.to);
+                if (d > distance) {
+                    furthest = k;
+                    distance = d;
+                }
+            }
+            tables = remove(tables, furthest);
+        }
+        int k = 0;
+        while (k < tables.length && tables[k].from < t.from) {
+            k++;
+        }
+        final Table[] added = new Table[tables.length + 1];
+        System.arraycopy(tables, 0, added, 0, k);
+        added[k] = t;
+        System.arraycopy(tables, k, added, k + 1, tables.length - k);
+        mTables = added;
+        mTable = t;
+        return t;
+    }
+
+    private static Table[] remove(Table[] tables, int i) {
+        final Table[] removed = new Table[tables.length - 1];
+        System.arraycopy(tables, 0, removed, 0, i);
+        System.arraycopy(tables, i + 1, removed, i, removed.length - i);
+        return removed;
+    }
+
+    /**
+     * @return a + b, or the nearest bound of long if that overflows
+     */
+    private static long plus(long a, long b) {
+        final long sum = a + b;
+        if (((a ^ sum) & (b ^ sum)) < 0) {
+            return b < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return sum;
+    }
+
+    /**
+     * Samples the zone to find its transitions in [from, to).
+     */
+    private Table scan(long from, long to) {
+        long[] transitions = new long[8];
+        int[] offsets = new int[9];
+        int count = 0;
+        int offset = mZone.getOffset(from);
+        offsets[0] = offset;
+        final long end = to - 1;
+        for (long t = from; t < end; ) {
+            final long next = end - t > SAMPLE ? t + SAMPLE : end;
+            final int nextOffset = mZone.getOffset(next);
+            if (nextOffset != offset) {
+                // bisect to the first millisecond of the new offset
+                long lo = t, hi = next;
+                while (hi - lo > 1) {
+                    final long mid = lo + (hi - lo) / 2;
+                    if (mZone.getOffset(mid) == offset) {
+                        lo = mid;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                if (count == transitions.length) {
+                    transitions = copyOf(transitions, count * 2);
+                    offsets = copyOf(offsets, count * 2 + 1);
+                }
+                transitions[count++] = hi;
+                offsets[count] = nextOffset;
+                offset = nextOffset;
+            }
+            t = next;
+        }
+        return new Table(from, to, copyOf(transitions, count), copyOf(offsets, count + 1));
+    }
+
+    /**
+     * Joins two adjacent tables, where early.to == late.from.
+     */
+    private static Table merge(Table early, Table late) {
+        final int n = early.transitions.length, m = late.transitions.length;
+        // a transition may fall exactly on the seam between the two scans
+        final boolean seam = early.offsets[n] != late.offsets[0];
+        final long[] transitions = new long[n + m + (seam ? 1 : 0)];
+        final int[] offsets = new int[transitions.length + 1];
+        System.arraycopy(early.transitions, 0, transitions, 0, n);
+        System.arraycopy(early.offsets, 0, offsets, 0, n + 1);
+        int k = n;
+        if (seam) {
+            transitions[k++] = late.from;
+            offsets[k] = late.offsets[0];
+        }
+        System.arraycopy(late.transitions, 0, transitions, k, m);
+        System.arraycopy(late.offsets, 1, offsets, k + 1, m);
+        return new Table(early.from, late.to, transitions, offsets);
+    }
+
+    private static long[] copyOf(long[] a, int length) {
+        long[] b = new long[length];
+        System.arraycopy(a, 0, b, 0, Math.min(a.length, length));
+        return b;
+    }
+
+    private static int[] copyOf(int[] a, int length) {
+        int[] b = new int[length];
+        System.arraycopy(a, 0, b, 0, Math.min(a.length, length));
+        return b;
+    }
+}
@@ -1,19 +1,16 @@
 package com.googlecode.android.widgets.DateSlider.timeview;
 
-import java.util.Calendar;
-
 import android.content.Context;
 
 import com.googlecode.android.widgets.DateSlider.TimeObject;
 
 /**
  * This is a subclass of the TimeLayoutView that represents a day. It uses
- * a different color to distinguish Sundays from other days.
+ * a different color to distinguish weekends and holidays from other days,
+ * and another one for today, as given by the flags of the unit.
  */
 public class DayTimeLayoutView extends TimeLayoutView {
 
-    protected boolean isSunday=false;
-
     /**
      * Constructor
      * @param context
@@ -28,21 +25,20 @@ public class DayTimeLayoutView extends TimeLayoutView {
     }
 
     @Override
-    public void setVals(TimeObject to) {
-        super.setVals(to);
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(to.endTime);
-        if (c.get(Calendar.DAY_OF_WEEK)==Calendar.SUNDAY && !isSunday) {
-            isSunday=true;
+    protected void onFlagsChanged(int oldFlags) {
+        super.onFlagsChanged(oldFlags);
+        if ((flags & (TimeObject.WEEKEND | TimeObject.HOLIDAY)) != 0) {
             colorMeSunday();
-        } else if (isSunday && c.get(Calendar.DAY_OF_WEEK)!=Calendar.SUNDAY) {
-            isSunday=false;
+        } else {
             colorMeWorkday();
         }
+        if ((flags & TimeObject.TODAY) != 0) {
+            colorMeToday();
+        }
     }
 
     /**
-     * this method is called when the current View takes a Sunday as time unit
+     * this method is called when the current View takes a weekend day or a holiday as time unit
      */
     protected void colorMeSunday() {
     	if (isOutOfBounds) return;
@@ -58,7 +54,7 @@ public class DayTimeLayoutView extends TimeLayoutView {
 
 
     /**
-     * this method is called when the current View takes no Sunday as time unit
+     * this method is called when the current View takes a working day as time unit
      */
     protected void colorMeWorkday() {
     	if (isOutOfBounds) return;
@@ -71,17 +67,12 @@ public class DayTimeLayoutView extends TimeLayoutView {
         }
     }
 
-    @Override
-    public void setVals(TimeView other) {
-        super.setVals(other);
-        DayTimeLayoutView otherDay = (DayTimeLayoutView) other;
-        if (otherDay.isSunday && !isSunday) {
-            isSunday = true;
-            colorMeSunday();
-        } else if (isSunday && !otherDay.isSunday) {
-            isSunday = false;
-            colorMeWorkday();
-        }
+    /**
+     * this method is called after the others when the current View takes today as time unit
+     */
+    protected void colorMeToday() {
+    	if (isOutOfBounds) return;
+        bottomView.setTextColor(isCenter ? 0xFF335588 : 0xFF445577);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.googlecode.android.widgets.DateSlider.timeview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.view.View;
+
+/**
+ * The density bar of a {@link DensityView}: it keeps the number of events
+ * and the length of the bar, and draws the bar along the bottom of the view.
+ */
+public class DensityBar {
+    private final View mView;
+    private int mCount;
+    private float mFraction;
+    private Paint mPaint;
+
+    /**
+     * @param view The view that the bar is drawn in, which is invalidated
+     *        when the bar changes
+     */
+    public DensityBar(View view) {
+        mView = view;
+    }
+
+    /**
+     * @param count The number of events, 0 to hide the bar
+     * @param fraction The length of the bar, from 0 to 1
+     */
+    public void set(int count, float fraction) {
+        if (count != mCount || fraction != mFraction) {
+            mCount = count;
+            mFraction = fraction;
+            mView.invalidate();
+        }
+    }
+
+    /**
+     * Takes over the count and length of another bar.
+     */
+    public void set(DensityBar other) {
+        set(other.mCount, other.mFraction);
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Draws the bar, if there are any events.
+     *
+     * @param canvas The canvas of the view
+     * @param dimmed true to draw the bar faded, as for a unit that is out of
+     *        bounds
+     */
+    public void draw(Canvas canvas, boolean dimmed) {
+        if (mCount == 0) {
+            return;
+        }
+        if (mPaint == null) {
+            mPaint = new Paint();
+        }
+        mPaint.setColor(dimmed ? 0x446699CC : 0xFF6699CC);
+        final int viewWidth = mView.getWidth(), viewHeight = mView.getHeight();
+        final float height = Math.max(2, viewHeight / 16);
+        final float width = Math.max(height, viewWidth * 0.8f * mFraction);
+        final float left = (viewWidth - width) / 2;
+        canvas.drawRect(left, viewHeight - 2 * height, left + width, viewHeight - height, mPaint);
+    }
+}
@@ -0,0 +1,25 @@
+package com.googlecode.android.widgets.DateSlider.timeview;
+
+/**
+ * Implemented by TimeViews that can show how many events their unit
+ * contains, as a bar whose length is the fraction of the busiest unit in
+ * view. ScrollLayout only shows densities in TimeViews that implement it, so
+ * other TimeViews needn't. See
+ * {@link com.googlecode.android.widgets.DateSlider.labeler.EventIndex} and
+ * {@link DensityBar}.
+ */
+public interface DensityView {
+    /**
+     * Shows the number of events in the unit this TimeView displays.
+     *
+     * @param count The number of events, 0 to hide the bar
+     * @param fraction The length of the bar, from 0 to 1
+     */
+    public void setDensity(int count, float fraction);
+    /**
+     * Get the number of events in the unit of this TimeView, as set by
+     * {@link #setDensity(int, float)}
+     * @return
+     */
+    public int getDensity();
+}
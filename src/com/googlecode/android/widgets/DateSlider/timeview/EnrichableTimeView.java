@@ -0,0 +1,17 @@
+package com.googlecode.android.widgets.DateSlider.timeview;
+
+/**
+ * Implemented by TimeViews that can show the enrichment of their unit. See
+ * {@link com.googlecode.android.widgets.DateSlider.labeler.Enricher}.
+ * ScrollLayout only passes enrichments on to TimeViews that implement it,
+ * so views that have no room for them needn't.
+ */
+public interface EnrichableTimeView {
+    /**
+     * Shows the enrichment of the unit this TimeView displays, or a
+     * placeholder while it is loading.
+     *
+     * @param enrichment The enrichment, or null for none
+     */
+    public void setEnrichment(CharSequence enrichment);
+}
@@ -0,0 +1,27 @@
+package com.googlecode.android.widgets.DateSlider.timeview;
+
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
+import com.googlecode.android.widgets.DateSlider.TimeObject;
+
+/**
+ * Implemented by TimeViews that can be relabeled in place from a
+ * {@link MutableTimeObject}, and that keep the flags of their unit (see
+ * {@link TimeObject#flags}). ScrollLayout relabels other TimeViews through
+ * {@link TimeView#setVals(TimeObject)}, which allocates a TimeObject per
+ * unit, and asks the labeler for the flags of their units.
+ */
+public interface FlaggedTimeView {
+    /**
+     * Sets this TimeView to display the contents of the specified MutableTimeObject.
+     * The TimeView must not keep a reference to the object, since the caller
+     * reuses it.
+     *
+     * @param to The MutableTimeObject to use to populate this TimeView
+     */
+    public void setVals(MutableTimeObject to);
+    /**
+     * Get the flags of the unit this TimeView displays, as in {@link TimeObject#flags}
+     * @return
+     */
+    public int getFlags();
+}
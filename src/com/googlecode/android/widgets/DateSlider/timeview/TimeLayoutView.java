@@ -1,26 +1,69 @@
 package com.googlecode.android.widgets.DateSlider.timeview;
 
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.Typeface;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import com.googlecode.android.widgets.DateSlider.LabelText;
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
+import com.googlecode.android.widgets.DateSlider.labeler.LabelFormat;
+import com.googlecode.android.widgets.DateSlider.labeler.ZoneLabel;
 
 /**
  * This is a more complex implementation of the TimeView consisting of a LinearLayout with
  * two TimeViews. This allows primary text and sub-text, such as the name of the day
- * and the day of the month. This class expects the text that it is passed via
- * {@link #setVals(TimeObject)} or {@link #setVals(TimeView)} to contian the primary
- * string followed by a space and then the secondary string.
+ * and the day of the month. The top TextView shows the primary part of the label
+ * and the bottom one the secondary part, as given by the TimeObject or reported
+ * by the LabelFormat (see {@link LabelText}), so the label is never searched for
+ * spaces unless it is a plain CharSequence.
+ *
+ * The text is kept in a char buffer that both TextViews display slices of,
+ * so that relabeling through {@link #setVals(MutableTimeObject)} doesn't
+ * allocate.
+ *
+ * If a secondary label is set with {@link #setSecondaryLabel(ZoneLabel)}, the
+ * top TextView shows the whole text instead, and the bottom one the secondary
+ * label of the start time, rendered into a buffer of its own.
+ *
+ * An enrichment (see {@link #setEnrichment(CharSequence)}) is shown in a third
+ * TextView below the other two, which is only added once there is one.
+ *
+ * The view styles itself from the flags of its unit (see {@link TimeObject#flags}),
+ * and only when they change; subclasses restyle in {@link #onFlagsChanged(int)}.
  */
-public class TimeLayoutView extends LinearLayout implements TimeView {
+public class TimeLayoutView extends LinearLayout implements TimeView, FlaggedTimeView, EnrichableTimeView, DensityView {
     protected long endTime, startTime;
+    /**
+     * The text as a String, built lazily by {@link #getTimeText()}
+     */
     protected String text;
+    protected char[] textBuffer = new char[16];
+    protected int textLength;
+    /**
+     * The ends of the primary and secondary parts of the text
+     */
+    protected int primaryEnd, secondaryEnd;
+    /**
+     * Receives the ends of the parts when the text is rendered
+     */
+    private final int[] parts = new int[2];
+    protected int flags;
+    protected final DensityBar densityBar = new DensityBar(this);
+    protected ZoneLabel secondaryLabel;
+    protected char[] secondaryBuffer;
+    protected int secondaryLength;
     protected boolean isCenter=false, isOutOfBounds=false;
     protected TextView topView, bottomView;
+    /**
+     * Shows the enrichment, or null until there is one
+     */
+    protected TextView enrichmentView;
+    protected CharSequence enrichment;
 
     /**
      * constructor
@@ -69,33 +112,134 @@ public class TimeLayoutView extends LinearLayout implements TimeView {
 
     }
 
-    
     public void setVals(TimeObject to) {
-        text = to.text.toString();
+        setTextBuffer(to.text.toString(), to.primaryEnd, to.secondaryEnd);
+        this.startTime = to.startTime;
+        this.endTime = to.endTime;
         setText();
+        setFlags(to.flags);
+    }
+
+    public void setVals(MutableTimeObject to) {
+        if (to.format != null) {
+            renderTextBuffer(to.format, to.startTime);
+        } else {
+            setTextBuffer(to.text.toString(), to.primaryEnd, to.secondaryEnd);
+        }
         this.startTime = to.startTime;
         this.endTime = to.endTime;
+        setText();
+        setFlags(to.flags);
     }
 
-    
     public void setVals(TimeView other) {
-        text = other.getTimeText().toString();
-        setText();
+        if (other instanceof TimeLayoutView) {
+            TimeLayoutView otherLayout = (TimeLayoutView)other;
+            if (textBuffer.length < otherLayout.textLength) {
+                textBuffer = new char[otherLayout.textBuffer.length];
+            }
+            System.arraycopy(otherLayout.textBuffer, 0, textBuffer, 0, otherLayout.textLength);
+            textLength = otherLayout.textLength;
+            primaryEnd = otherLayout.primaryEnd;
+            secondaryEnd = otherLayout.secondaryEnd;
+            text = otherLayout.text;
+            setEnrichment(otherLayout.enrichment);
+            densityBar.set(otherLayout.densityBar);
+        } else {
+            final String s = other.getTimeText();
+            setTextBuffer(s, LabelText.primaryEnd(s), LabelText.secondaryEnd(s));
+        }
         startTime = other.getStartTime();
         endTime = other.getEndTime();
+        setText();
+        setFlags(other instanceof FlaggedTimeView ? ((FlaggedTimeView)other).getFlags() : 0);
+    }
+
+    /**
+     * Applies the flags of the unit, restyling the view if they changed
+     */
+    protected void setFlags(int flags) {
+        if (flags != this.flags) {
+            final int oldFlags = this.flags;
+            this.flags = flags;
+            onFlagsChanged(oldFlags);
+        }
+    }
+
+    /**
+     * Called when the flags of the unit change. The default implementation
+     * greys out units that are {@link TimeObject#OUT_OF_RANGE} or
+     * {@link TimeObject#DISABLED}.
+     *
+     * @param oldFlags The previous flags
+     */
+    protected void onFlagsChanged(int oldFlags) {
+        setOutOfBounds((flags & (TimeObject.OUT_OF_RANGE | TimeObject.DISABLED)) != 0);
     }
 
     /**
-     * sets the TextView texts by splitting the text into two
+     * Shows a label of the start time in another time zone in the bottom
+     * TextView, rather than the second part of the text.
+     *
+     * @param label The secondary label, or null to split the text again
+     */
+    public void setSecondaryLabel(ZoneLabel label) {
+        secondaryLabel = label;
+        if (label != null && secondaryBuffer == null) {
+            secondaryBuffer = new char[16];
+        }
+        setText();
+    }
+
+    private void renderTextBuffer(LabelFormat format, long time) {
+        textLength = format.render(time, textBuffer, parts);
+        if (textLength > textBuffer.length) {
+            textBuffer = new char[textLength];
+            format.render(time, textBuffer, parts);
+        }
+        primaryEnd = parts[0];
+        secondaryEnd = parts[1];
+        text = null;
+    }
+
+    private void setTextBuffer(String s, int primaryEnd, int secondaryEnd) {
+        textLength = s.length();
+        if (textLength > textBuffer.length) {
+            textBuffer = new char[textLength];
+        }
+        s.getChars(0, textLength, textBuffer, 0);
+        this.primaryEnd = primaryEnd;
+        this.secondaryEnd = secondaryEnd;
+        text = s;
+    }
+
+    /**
+     * sets the TextView texts: the top TextView shows the primary part of the
+     * text, and the bottom TextView the secondary part. With a secondary
+     * label, the top TextView shows all of the text and the bottom one the
+     * secondary label.
      */
     protected void setText() {
-        String[] splitTime = text.split(" ");
-        topView.setText(splitTime[0]);
-        bottomView.setText(splitTime[1]);
+        if (secondaryLabel != null) {
+            secondaryLength = secondaryLabel.render(startTime, secondaryBuffer);
+            if (secondaryLength > secondaryBuffer.length) {
+                secondaryBuffer = new char[secondaryLength];
+                secondaryLabel.render(startTime, secondaryBuffer);
+            }
+            topView.setText(textBuffer, 0, textLength);
+            bottomView.setText(secondaryBuffer, 0, secondaryLength);
+            return;
+        }
+        final int start = Math.min(primaryEnd + 1, textLength);
+        topView.setText(textBuffer, 0, primaryEnd);
+        bottomView.setText(textBuffer, start, Math.max(secondaryEnd - start, 0));
     }
 
-    
+
     public String getTimeText() {
+        if (text == null) {
+            text = new String(textBuffer, 0, textLength);
+        }
         return text;
     }
 
@@ -109,6 +253,42 @@ public class TimeLayoutView extends LinearLayout implements TimeView {
         return endTime;
     }
 
+    public int getFlags() {
+        return flags;
+    }
+
+    public void setEnrichment(CharSequence enrichment) {
+        if (enrichment == this.enrichment) {
+            return;
+        }
+        this.enrichment = enrichment;
+        if (enrichmentView == null) {
+            if (enrichment == null) {
+                return;
+            }
+            enrichmentView = new TextView(getContext());
+            enrichmentView.setGravity(Gravity.CENTER_HORIZONTAL|Gravity.TOP);
+            enrichmentView.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 10);
+            enrichmentView.setTextColor(isCenter ? 0xFF444444 : 0xFF888888);
+            addView(enrichmentView);
+        }
+        enrichmentView.setText(enrichment != null ? enrichment : "");
+    }
+
+    public void setDensity(int count, float fraction) {
+        densityBar.set(count, fraction);
+    }
+
+    public int getDensity() {
+        return densityBar.getCount();
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        densityBar.draw(canvas, isOutOfBounds);
+    }
+
 	public boolean isOutOfBounds() {
 		return isOutOfBounds;
 	}
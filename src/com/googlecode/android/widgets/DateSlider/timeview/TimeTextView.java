@@ -1,22 +1,36 @@
 package com.googlecode.android.widgets.DateSlider.timeview;
 
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.Typeface;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.widget.TextView;
 
+import com.googlecode.android.widgets.DateSlider.MutableTimeObject;
 import com.googlecode.android.widgets.DateSlider.TimeObject;
+import com.googlecode.android.widgets.DateSlider.labeler.LabelFormat;
 
 /**
  * This is a simple implementation of a TimeView which is implemented
  * as a TextView. It is aware of whether or not it is the center view
  * in the ScrollLayout so that it can alter its appearance to indicate
  * that it is currently selected.
+ *
+ * The text is kept in a char buffer that the TextView displays, so that
+ * relabeling the view, or copying the label of another TimeTextView, doesn't
+ * allocate.
+ *
+ * The view styles itself from the flags of its unit (see {@link TimeObject#flags}),
+ * and only when they change; subclasses restyle in {@link #onFlagsChanged(int)}.
  */
-public class TimeTextView extends TextView implements TimeView {
+public class TimeTextView extends TextView implements TimeView, FlaggedTimeView, DensityView {
     protected long endTime, startTime;
     protected boolean isOutOfBounds = false;
+    protected char[] labelBuffer = new char[16];
+    protected int labelLength;
+    protected int flags;
+    protected final DensityBar densityBar = new DensityBar(this);
 
     /**
      * constructor
@@ -45,20 +59,86 @@ public class TimeTextView extends TextView implements TimeView {
         }
     }
 
-    
     public void setVals(TimeObject to) {
-        setText(to.text);
+        setLabel(to.text);
         this.startTime = to.startTime;
         this.endTime = to.endTime;
+        setFlags(to.flags);
+    }
+
+    public void setVals(MutableTimeObject to) {
+        if (to.format != null) {
+            renderLabel(to.format, to.startTime);
+        } else {
+            setLabel(to.text);
+        }
+        this.startTime = to.startTime;
+        this.endTime = to.endTime;
+        setFlags(to.flags);
     }
 
-    
     public void setVals(TimeView other) {
-        setText(other.getTimeText());
+        if (other instanceof TimeTextView) {
+            TimeTextView otherText = (TimeTextView)other;
+            ensureCapacity(otherText.labelLength);
+            System.arraycopy(otherText.labelBuffer, 0, labelBuffer, 0, otherText.labelLength);
+            labelLength = otherText.labelLength;
+            setText(labelBuffer, 0, labelLength);
+            densityBar.set(otherText.densityBar);
+        } else {
+            setLabel(other.getTimeText());
+        }
         startTime = other.getStartTime();
         endTime = other.getEndTime();
+        setFlags(other instanceof FlaggedTimeView ? ((FlaggedTimeView)other).getFlags() : 0);
     }
-    
+
+    /**
+     * Applies the flags of the unit, restyling the view if they changed
+     */
+    protected void setFlags(int flags) {
+        if (flags != this.flags) {
+            final int oldFlags = this.flags;
+            this.flags = flags;
+            onFlagsChanged(oldFlags);
+        }
+    }
+
+    /**
+     * Called when the flags of the unit change. The default implementation
+     * greys out units that are {@link TimeObject#OUT_OF_RANGE} or
+     * {@link TimeObject#DISABLED}.
+     *
+     * @param oldFlags The previous flags
+     */
+    protected void onFlagsChanged(int oldFlags) {
+        setOutOfBounds((flags & (TimeObject.OUT_OF_RANGE | TimeObject.DISABLED)) != 0);
+    }
+
+    private void renderLabel(LabelFormat format, long time) {
+        labelLength = format.render(time, labelBuffer);
+        if (labelLength > labelBuffer.length) {
+            labelBuffer = new char[labelLength];
+            format.render(time, labelBuffer);
+        }
+        setText(labelBuffer, 0, labelLength);
+    }
+
+    private void setLabel(CharSequence label) {
+        labelLength = label.length();
+        ensureCapacity(labelLength);
+        for (int i = 0; i < labelLength; i++) {
+            labelBuffer[i] = label.charAt(i);
+        }
+        setText(labelBuffer, 0, labelLength);
+    }
+
+    private void ensureCapacity(int length) {
+        if (labelBuffer.length < length) {
+            labelBuffer = new char[length];
+        }
+    }
+
     public long getStartTime() {
         return this.startTime;
     }
@@ -73,6 +153,24 @@ public class TimeTextView extends TextView implements TimeView {
         return getText().toString();
     }
 
+    public int getFlags() {
+        return flags;
+    }
+
+    public void setDensity(int count, float fraction) {
+        densityBar.set(count, fraction);
+    }
+
+    public int getDensity() {
+        return densityBar.getCount();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        densityBar.draw(canvas, isOutOfBounds);
+    }
+
 	public boolean isOutOfBounds() {
 		return isOutOfBounds;
 	}
@@ -26,6 +26,10 @@ import com.googlecode.android.widgets.DateSlider.TimeObject;
  * displayed as a single point in time (e.g. January), but actually represents a
  * range of times (e.g. 1/1-1/31). The TimeView stores the range as well as
  * a string describing how to display itself.
+ *
+ * TimeViews may also implement {@link FlaggedTimeView},
+ * {@link EnrichableTimeView} and {@link DensityView}, which ScrollLayout uses
+ * when they are there.
  */
 public interface TimeView {
     /**